@@ -0,0 +1,106 @@
+
+package org.hapiserver;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Formats the names covering a time range for many templates at once.
+ * Templates are grouped by their cadence, and the intervals are found once
+ * for each group and then formatted with each template in the group.  For example,
+ * hundreds of daily datasets share a single sequence of days.  Templates
+ * which cannot be grouped, such as those with a stop time field, are
+ * formatted with URITemplate.formatRange.
+ * @author jbf
+ */
+public class BatchFormatter {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    private BatchFormatter() {
+    }
+
+    /**
+     * format the names covering the time range for each template.  The
+     * result is the same as calling URITemplate.formatRange for each one.
+     * @param templates the templates.
+     * @param startTimeStr the beginning of the interval to cover
+     * @param stopTimeStr the end of the interval to cover
+     * @param extra extra named parameters
+     * @return map from each template to its formatted names, in the order of templates.
+     * @throws ParseException when the initial parsing cannot be done.
+     */
+    public static Map<String,String[]> formatRange( Collection<String> templates,
+            String startTimeStr,
+            String stopTimeStr,
+            Map<String,String> extra ) throws ParseException {
+
+        Map<String,List<String>> groups= new LinkedHashMap<>();
+        Map<String,URITemplate> compiled= new HashMap<>();
+        Map<String,String[]> result= new LinkedHashMap<>();
+
+        for ( String t: templates ) {
+            if ( result.containsKey(t) ) continue;
+            URITemplate ut= new URITemplate(t);
+            String key= ut.getCadenceKey();
+            if ( key==null ) {
+                logger.log( Level.FINE, "template cannot be grouped: {0}", t );
+                result.put( t, URITemplate.formatRange( t, startTimeStr, stopTimeStr, extra ) );
+            } else {
+                result.put( t, null ); // keep the order
+                compiled.put( t, ut );
+                List<String> group= groups.get(key);
+                if ( group==null ) {
+                    group= new ArrayList<>();
+                    groups.put( key, group );
+                }
+                group.add( t );
+            }
+        }
+
+        for ( List<String> group: groups.values() ) {
+            String t0= group.get(0);
+            URITemplate first= compiled.get(t0);
+            List<String> names1= new ArrayList<>();
+            List<int[]> ranges= new ArrayList<>();
+            IntervalCursor c= new IntervalCursor( first, startTimeStr, stopTimeStr, extra );
+            while ( c.hasNext() ) {
+                names1.add( c.next() );
+                int[] tr= new int[2*TimeUtil.TIME_DIGITS];
+                System.arraycopy( c.getStartTime(), 0, tr, 0, TimeUtil.TIME_DIGITS );
+                System.arraycopy( c.getStopTime(), 0, tr, TimeUtil.TIME_DIGITS, TimeUtil.TIME_DIGITS );
+                ranges.add( tr );
+            }
+            String[] names= names1.toArray( new String[names1.size()] );
+            result.put( t0, names );
+            if ( group.size()==1 ) continue;
+
+            logger.log( Level.FINE, "formatting {0} templates with {1} intervals of {2}",
+                new Object[] { group.size(), names.length, t0 } );
+
+            int[] start= new int[TimeUtil.TIME_DIGITS];
+            int[] stop= new int[TimeUtil.TIME_DIGITS];
+            for ( int j=1; j<group.size(); j++ ) {
+                String t= group.get(j);
+                URITemplate ut= compiled.get(t);
+                String[] ss= new String[names.length];
+                for ( int i=0; i<names.length; i++ ) {
+                    // formatStartStopRange may modify the arrays, so copy the shared intervals.
+                    System.arraycopy( ranges.get(i), 0, start, 0, TimeUtil.TIME_DIGITS );
+                    System.arraycopy( ranges.get(i), TimeUtil.TIME_DIGITS, stop, 0, TimeUtil.TIME_DIGITS );
+                    ss[i]= ut.formatStartStopRange( start, stop, extra );
+                }
+                result.put( t, ss );
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,276 @@
+
+package org.hapiserver;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers which formatted names exist, so that repeated requests for the
+ * same interval do not check the file system each time.  Each answer is kept
+ * for a time-to-live, after which it is checked again, and the number of
+ * names remembered is limited, with the least recently used forgotten first.
+ * <p>
+ * When a listing of the files which exist is available, it can be given to
+ * setListing, which builds a compact Bloom filter of the names.  A name which
+ * is not in the filter certainly does not exist, so it is reported missing
+ * without any I/O.  A name which is in the filter might exist, and is checked
+ * as usual.
+ * </p>
+ * For example:<pre>
+ *   ExistenceCache cache= new ExistenceCache( 60000, 10000 );
+ *   URITemplate ut= new URITemplate( "/data/$Y/$Y$m$d.cdf" );
+ *   if ( cache.exists( ut, TimeUtil.parseISO8601TimeRange("2024-01-01/P1D"), extra ) ) { ... }
+ * </pre>
+ * One cache can be shared by many threads.  Names are checked without holding
+ * the cache's lock, so two threads asking about the same name at once may
+ * both check it.
+ * @author jbf
+ */
+public class ExistenceCache {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    /**
+     * checks if a name exists.
+     */
+    public interface Checker {
+
+        /**
+         * @param name the formatted name.
+         * @return true if the name exists.
+         */
+        public boolean exists( String name );
+    }
+
+    /**
+     * the default checker, which looks for the name on the local file system.
+     */
+    public static final Checker FILE_CHECKER= new Checker() {
+        @Override
+        public boolean exists( String name ) {
+            File f= name.startsWith("file:") ? new File( name.substring(5) ) : new File( name );
+            return f.exists();
+        }
+    };
+
+    private static class Answer {
+        final boolean exists;
+        final long expires;
+        Answer( boolean exists, long expires ) {
+            this.exists= exists;
+            this.expires= expires;
+        }
+    }
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LinkedHashMap<String,Answer> entries;
+
+    private Checker checker= FILE_CHECKER;
+    private BloomFilter listing= null;
+
+    private long hits= 0;
+    private long misses= 0;
+    private long evictions= 0;
+    private long listingRejections= 0;
+
+    /**
+     * incremented when the cached answers are discarded, so that answers
+     * from checks made before then are not added.
+     */
+    private long version= 0;
+
+    /**
+     * create a cache.
+     * @param ttlMillis the time in milliseconds an answer is kept before it is checked again.
+     * @param maxEntries the maximum number of names remembered.
+     */
+    public ExistenceCache( long ttlMillis, int maxEntries ) {
+        if ( ttlMillis<0 ) throw new IllegalArgumentException("ttl must be zero or more");
+        if ( maxEntries<1 ) throw new IllegalArgumentException("maxEntries must be at least 1");
+        this.ttlMillis= ttlMillis;
+        this.maxEntries= maxEntries;
+        this.entries= new LinkedHashMap<String,Answer>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String,Answer> eldest ) {
+                if ( size()>ExistenceCache.this.maxEntries ) {
+                    evictions++;
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        };
+    }
+
+    /**
+     * set the checker used when the answer is not in the cache.
+     * @param checker the checker, which is FILE_CHECKER by default.
+     */
+    public synchronized void setChecker( Checker checker ) {
+        this.checker= checker;
+        version++;
+    }
+
+    /**
+     * set the listing of names known to exist.  Names which are not in the
+     * listing are reported as missing without being checked.  Answers already
+     * cached are discarded, since they may disagree with the new listing.
+     * @param names the names which exist, or null to remove the listing.
+     * @param falsePositiveRate the fraction of missing names which will be checked anyway, such as 0.01.
+     */
+    public synchronized void setListing( Collection<String> names, double falsePositiveRate ) {
+        if ( names==null ) {
+            this.listing= null;
+        } else {
+            BloomFilter b= new BloomFilter( names.size(), falsePositiveRate );
+            for ( String n: names ) {
+                b.add(n);
+            }
+            this.listing= b;
+            logger.log( Level.FINE, "listing of {0} names uses {1} bits", new Object[] { names.size(), b.nbits } );
+        }
+        entries.clear();
+        version++;
+    }
+
+    /**
+     * return true if the name exists, using the cached answer if it has not expired.
+     * The check is made without holding the lock, so that other threads are
+     * not held up by a slow file system.
+     * @param name the formatted name.
+     * @return true if the name exists.
+     */
+    public boolean exists( String name ) {
+        long now= System.currentTimeMillis();
+        Checker c;
+        long v;
+        synchronized ( this ) {
+            if ( listing!=null && !listing.mightContain(name) ) {
+                listingRejections++;
+                return false;
+            }
+            Answer a= entries.get(name);
+            if ( a!=null && a.expires>now ) {
+                hits++;
+                return a.exists;
+            }
+            misses++;
+            c= checker;
+            v= version;
+        }
+        boolean exists= c.exists(name);
+        synchronized ( this ) {
+            if ( v==version ) {
+                entries.put( name, new Answer( exists, now+ttlMillis ) );
+            }
+        }
+        return exists;
+    }
+
+    /**
+     * return true if the name formatted for the interval exists.
+     * @param template the template.
+     * @param timeRange the fourteen-component time range.
+     * @param extra extra parameters used to format the name.
+     * @return true if the name exists.
+     */
+    public boolean exists( URITemplate template, int[] timeRange, Map<String,String> extra ) {
+        return exists( template.formatTimeRange( timeRange, extra ) );
+    }
+
+    /**
+     * forget all the cached answers.  The listing and the counters are not changed.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        version++;
+    }
+
+    /**
+     * @return the number of answers found in the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of names which were checked, because they were not cached or had expired.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of answers forgotten to keep within maxEntries.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of names reported missing by the listing without being checked.
+     */
+    public synchronized long getListingRejections() {
+        return listingRejections;
+    }
+
+    /**
+     * @return the number of answers currently cached.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Bloom filter of strings, using double hashing to derive the k bit positions.
+     */
+    private static class BloomFilter {
+        final long[] bits;
+        final int nbits;
+        final int nhash;
+
+        BloomFilter( int n, double p ) {
+            if ( p<=0 || p>=1 ) throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+            n= Math.max( 1, n );
+            double ln2= Math.log(2);
+            long m= (long)Math.ceil( -n * Math.log(p) / ( ln2 * ln2 ) );
+            m= Math.max( 64, Math.min( m, Integer.MAX_VALUE - 63 ) );
+            this.nbits= (int)m;
+            this.nhash= Math.max( 1, (int)Math.round( ( m / (double)n ) * ln2 ) );
+            this.bits= new long[ ( nbits + 63 ) / 64 ];
+        }
+
+        private static int hash2( String s ) {
+            int h= 0x811C9DC5;
+            for ( int i=0; i<s.length(); i++ ) {
+                h^= s.charAt(i);
+                h*= 0x01000193;
+            }
+            return h | 1;
+        }
+
+        void add( String s ) {
+            int h1= s.hashCode();
+            int h2= hash2(s);
+            for ( int i=0; i<nhash; i++ ) {
+                int b= ( ( h1 + i*h2 ) & 0x7FFFFFFF ) % nbits;
+                bits[b>>>6] |= 1L << b;
+            }
+        }
+
+        boolean mightContain( String s ) {
+            int h1= s.hashCode();
+            int h2= hash2(s);
+            for ( int i=0; i<nhash; i++ ) {
+                int b= ( ( h1 + i*h2 ) & 0x7FFFFFFF ) % nbits;
+                if ( ( bits[b>>>6] & ( 1L << b ) )==0 ) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+
+package org.hapiserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks which of a list of formatted names exist, probing many of them at
+ * once.  HTTP names are checked with HEAD requests, with a limit on the
+ * number of requests in flight in total and to each host, and requests
+ * which fail with an IOException or a 429 or 5xx status are retried with
+ * exponential backoff.  Names which are not URLs, or are file: URLs,
+ * are checked on the local file system.  For example:<pre>
+ *   String template= "https://example.com/data/$Y/$Y$m$d.cdf";
+ *   String[] names= URITemplate.formatRange( template, "2024-01-01", "2025-01-01" );
+ *   ExistenceResolver r= new ExistenceResolver( 16, 4 );
+ *   r.resolve( new URITemplate(template), names, new ExistenceResolver.Listener() { ... } );
+ * </pre>
+ * Results are passed to the listener as the probes complete, so they are
+ * not necessarily in the same order as the names.  The listener is called
+ * on the thread which called resolve.  A check is only given to a worker
+ * thread once its host is below the per-host limit, so a slow host does not
+ * hold threads which could be checking other hosts.
+ * @author jbf
+ */
+public class ExistenceResolver {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    /**
+     * the result of checking one name.
+     */
+    public static class Result {
+        private final String name;
+        private final int[] timeRange;
+        private final boolean exists;
+        private final long size;
+        private final long lastModified;
+        private final IOException exception;
+
+        Result( String name, int[] timeRange, boolean exists, long size, long lastModified, IOException exception ) {
+            this.name= name;
+            this.timeRange= timeRange;
+            this.exists= exists;
+            this.size= size;
+            this.lastModified= lastModified;
+            this.exception= exception;
+        }
+
+        /**
+         * @return the name which was checked.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the fourteen-component time range of the name, or null if no template was provided.
+         */
+        public int[] getTimeRange() {
+            return timeRange;
+        }
+
+        /**
+         * @return true if the name exists.
+         */
+        public boolean exists() {
+            return exists;
+        }
+
+        /**
+         * @return the size in bytes, or -1 if this is not known.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the last modified time in milliseconds since 1970-01-01T00:00Z, or 0 if this is not known.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return null, or the exception which prevented the check after all retries were used.
+         */
+        public IOException getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return name + ( exists ? " exists" : " does not exist" );
+        }
+    }
+
+    /**
+     * receives the results.
+     */
+    public interface Listener {
+
+        /**
+         * called as each check completes.
+         * @param result the result.
+         */
+        public void result( Result result );
+    }
+
+    private final int maxInFlight;
+    private final int maxPerHost;
+    private int maxRetries= 3;
+    private long initialBackoffMillis= 200;
+    private int timeoutMillis= 20000;
+
+    /**
+     * create a resolver.
+     * @param maxInFlight the maximum number of checks made at one time.
+     * @param maxPerHost the maximum number of checks made to any one host at one time.
+     */
+    public ExistenceResolver( int maxInFlight, int maxPerHost ) {
+        if ( maxInFlight<1 || maxPerHost<1 ) {
+            throw new IllegalArgumentException("limits must be at least 1");
+        }
+        this.maxInFlight= maxInFlight;
+        this.maxPerHost= maxPerHost;
+    }
+
+    /**
+     * set the number of times a failed request is repeated.
+     * @param maxRetries the number of retries, where 0 means do not retry.
+     */
+    public void setMaxRetries( int maxRetries ) {
+        this.maxRetries= maxRetries;
+    }
+
+    /**
+     * set the time to wait before the first retry.  This doubles with each
+     * subsequent retry.
+     * @param initialBackoffMillis the time in milliseconds.
+     */
+    public void setInitialBackoffMillis( long initialBackoffMillis ) {
+        this.initialBackoffMillis= initialBackoffMillis;
+    }
+
+    /**
+     * set the connect and read timeout for each request.
+     * @param timeoutMillis the time in milliseconds.
+     */
+    public void setTimeoutMillis( int timeoutMillis ) {
+        this.timeoutMillis= timeoutMillis;
+    }
+
+    /**
+     * check each of the names, passing the results to the listener as they
+     * become available.  This returns after all the names have been checked.
+     * @param template null, or the template which formatted the names, used to parse the time range for each result.
+     * @param names the names, which are URLs or file names.
+     * @param listener receives each result.
+     * @return the number of names which exist.
+     * @throws InterruptedException when the thread is interrupted while waiting for the results.
+     */
+    public int resolve( URITemplate template, String[] names, Listener listener ) throws InterruptedException {
+
+        final BlockingQueue<Probe> done= new LinkedBlockingQueue<>();
+        final Map<String,Host> hosts= new HashMap<>();
+
+        final ExecutorService exec= Executors.newFixedThreadPool( Math.min( maxInFlight, Math.max( 1, names.length ) ),
+            new ThreadFactory() {
+                int count=0;
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t= new Thread( r, "ExistenceResolver-"+(count++) );
+                    t.setDaemon(true);
+                    return t;
+                }
+            } );
+
+        try {
+            for ( final String name: names ) {
+                int[] timeRange= null;
+                if ( template!=null ) {
+                    try {
+                        timeRange= template.parse( name, new HashMap<>() );
+                    } catch ( ParseException ex ) {
+                        logger.log( Level.FINE, "unable to parse {0}", name );
+                    }
+                }
+                Probe probe= new Probe( name, timeRange, host( hosts, name ) );
+                if ( probe.host==null || probe.host.inFlight<maxPerHost ) {
+                    submit( exec, probe, done );
+                } else {
+                    probe.host.waiting.add( probe );
+                }
+            }
+
+            // Probes waiting for their host are submitted as others to the same host complete,
+            // so the pool threads are never blocked waiting for a host.
+            int count= 0;
+            for ( int i=0; i<names.length; i++ ) {
+                Probe p= done.take();
+                if ( p.host!=null ) {
+                    p.host.inFlight--;
+                    Probe next= p.host.waiting.poll();
+                    if ( next!=null ) submit( exec, next, done );
+                }
+                if ( p.result.exists() ) count++;
+                listener.result( p.result );
+            }
+            return count;
+
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    /**
+     * a name to check, and its result once it is checked.
+     */
+    private static class Probe {
+        final String name;
+        final int[] timeRange;
+        final Host host;
+        Result result;
+
+        Probe( String name, int[] timeRange, Host host ) {
+            this.name= name;
+            this.timeRange= timeRange;
+            this.host= host;
+        }
+    }
+
+    /**
+     * the number of checks in flight to one host, and the checks waiting for it.  
+     * This is only used by the thread which called resolve.
+     */
+    private static class Host {
+        int inFlight= 0;
+        final Deque<Probe> waiting= new ArrayDeque<>();
+    }
+
+    private void submit( ExecutorService exec, final Probe probe, final BlockingQueue<Probe> done ) {
+        if ( probe.host!=null ) probe.host.inFlight++;
+        exec.execute( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    probe.result= check( probe.name, probe.timeRange );
+                } catch ( RuntimeException ex ) {
+                    logger.log( Level.FINE, "unable to check "+probe.name, ex );
+                    probe.result= new Result( probe.name, probe.timeRange, false, -1, 0, new IOException(ex) );
+                } finally {
+                    // every probe must be returned, or resolve waits for it forever.
+                    if ( probe.result==null ) {
+                        probe.result= new Result( probe.name, probe.timeRange, false, -1, 0, 
+                            new IOException( "check did not complete: "+probe.name ) );
+                    }
+                    done.add( probe );
+                }
+            }
+        } );
+    }
+
+    /**
+     * return the record of checks to the host of the name, or null
+     * if the name is not an http or https URL.
+     */
+    private static Host host( Map<String,Host> hosts, String name ) {
+        URL url= toHttpURL( name );
+        if ( url==null ) return null;
+        String key= url.getHost() + ":" + url.getPort();
+        Host h= hosts.get(key);
+        if ( h==null ) {
+            h= new Host();
+            hosts.put( key, h );
+        }
+        return h;
+    }
+
+    /**
+     * return the URL if the name is an http or https URL, or null otherwise.
+     */
+    private static URL toHttpURL( String name ) {
+        if ( name.startsWith("http://") || name.startsWith("https://") ) {
+            try {
+                return new URL(name);
+            } catch ( MalformedURLException ex ) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+    }
+
+    private Result check( String name, int[] timeRange ) {
+        URL url= toHttpURL( name );
+        if ( url==null ) {
+            File f= name.startsWith("file:") ? new File( name.substring(5) ) : new File( name );
+            if ( f.exists() ) {
+                return new Result( name, timeRange, true, f.length(), f.lastModified(), null );
+            } else {
+                return new Result( name, timeRange, false, -1, 0, null );
+            }
+        }
+        IOException lastException= null;
+        for ( int attempt=0; attempt<=maxRetries; attempt++ ) {
+            if ( attempt>0 ) {
+                try {
+                    Thread.sleep( initialBackoffMillis << ( attempt-1 ) );
+                } catch ( InterruptedException ex ) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            HttpURLConnection connect= null;
+            try {
+                connect= (HttpURLConnection)url.openConnection();
+                connect.setRequestMethod("HEAD");
+                connect.setConnectTimeout( timeoutMillis );
+                connect.setReadTimeout( timeoutMillis );
+                int code= connect.getResponseCode();
+                if ( code>=200 && code<300 ) {
+                    return new Result( name, timeRange, true, connect.getContentLengthLong(), connect.getLastModified(), null );
+                } else if ( code==429 || code>=500 ) {
+                    lastException= new IOException( "got "+code+" from "+name );
+                    logger.log( Level.FINE, "retrying after {0} from {1}", new Object[] { code, name } );
+                } else {
+                    return new Result( name, timeRange, false, -1, 0, null );
+                }
+            } catch ( IOException ex ) {
+                lastException= ex;
+                logger.log( Level.FINE, "retrying after exception from {0}", name );
+            } finally {
+                if ( connect!=null ) connect.disconnect();
+            }
+        }
+        return new Result( name, timeRange, false, -1, 0, lastException );
+    }
+}
@@ -0,0 +1,176 @@
+
+package org.hapiserver;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the names formatted by a template, keyed by the time
+ * range and, when the template has fields which use them, the extra
+ * parameters.  The entries are divided among stripes by the hash of the
+ * key, each with its own lock and least-recently-used order, so that
+ * threads formatting different intervals seldom wait for each other.
+ * @author jbf
+ * @see URITemplate#setFormatCacheSize(int)
+ */
+class FormatCache {
+
+    private static final int STRIPES= 16;
+
+    /**
+     * time range and extra parameters of a formatted name.
+     */
+    static final class Key {
+        private final int[] times;
+        private final Map<String,String> extra;
+        private final int hash;
+
+        Key( int[] times, Map<String,String> extra ) {
+            this.times= times;
+            this.extra= extra;
+            this.hash= 31 * Arrays.hashCode(times) + extra.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( !( o instanceof Key ) ) return false;
+            Key k= (Key)o;
+            return hash==k.hash && Arrays.equals( times, k.times ) && extra.equals( k.extra );
+        }
+    }
+
+    /**
+     * one stripe of the cache, in least-recently-used order, which counts its evictions.
+     */
+    private static final class Stripe extends LinkedHashMap<Key,String> {
+        private static final long serialVersionUID= 1L;
+
+        private final int maxEntries;
+        private final LongAdder evictions;
+
+        Stripe( int maxEntries, LongAdder evictions ) {
+            super( 16, 0.75f, true );
+            this.maxEntries= maxEntries;
+            this.evictions= evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Key,String> eldest ) {
+            if ( size()>maxEntries ) {
+                evictions.increment();
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final boolean usesExtra;
+
+    private final LongAdder hits= new LongAdder();
+    private final LongAdder misses= new LongAdder();
+    private final LongAdder evictions= new LongAdder();
+
+    /**
+     * create the cache.
+     * @param maxEntries the maximum number of names kept.
+     * @param usesExtra true if the names depend on the extra parameters, so they are part of the key.
+     */
+    FormatCache( int maxEntries, boolean usesExtra ) {
+        if ( maxEntries<1 ) throw new IllegalArgumentException("maxEntries must be at least 1");
+        int n= Math.min( STRIPES, maxEntries );
+        int perStripe= ( maxEntries + n - 1 ) / n;
+        this.stripes= new Stripe[n];
+        for ( int i=0; i<n; i++ ) {
+            stripes[i]= new Stripe( perStripe, evictions );
+        }
+        this.usesExtra= usesExtra;
+    }
+
+    /**
+     * make the key for the time range, copying the arrays and map so they can be modified later.
+     * @param startTime seven-component start time
+     * @param stopTime seven-component stop time
+     * @param extra extra parameters
+     * @return the key.
+     */
+    Key key( int[] startTime, int[] stopTime, Map<String,String> extra ) {
+        int[] times= new int[2*TimeUtil.TIME_DIGITS];
+        System.arraycopy( startTime, 0, times, 0, TimeUtil.TIME_DIGITS );
+        System.arraycopy( stopTime, 0, times, TimeUtil.TIME_DIGITS, TimeUtil.TIME_DIGITS );
+        Map<String,String> e;
+        if ( !usesExtra || extra==null || extra.isEmpty() ) {
+            e= Collections.emptyMap();
+        } else {
+            e= new HashMap<>( extra );
+        }
+        return new Key( times, e );
+    }
+
+    private Stripe stripe( Key key ) {
+        int h= key.hash;
+        h^= h>>>16;
+        return stripes[ ( h & 0x7FFFFFFF ) % stripes.length ];
+    }
+
+    /**
+     * @param key the key
+     * @return the name, or null if it is not cached.
+     */
+    String get( Key key ) {
+        Stripe s= stripe(key);
+        String result;
+        synchronized ( s ) {
+            result= s.get(key);
+        }
+        if ( result==null ) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * @param key the key
+     * @param name the formatted name.
+     */
+    void put( Key key, String name ) {
+        Stripe s= stripe(key);
+        synchronized ( s ) {
+            s.put( key, name );
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    int size() {
+        int n= 0;
+        for ( Stripe s: stripes ) {
+            synchronized ( s ) {
+                n+= s.size();
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,255 @@
+
+package org.hapiserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scans HTML directory listings, like those produced by Apache and nginx
+ * autoindex, for href values which are matched by a URITemplate.  The
+ * document is read incrementally from the stream, and no DOM is built,
+ * so multi-megabyte listings are handled with a fixed amount of memory.
+ * Each href value is checked against the literal prefix and suffix of
+ * the template as it is read, and only the candidates are parsed:<pre>
+ *   HtmlIndexScanner s= new HtmlIndexScanner( new URITemplate("$Y$m$d.dat") );
+ *   s.scan( new URL("https://example.com/data/"), new HtmlIndexScanner.Listener() {
+ *       public void found( String name, int[] timeRange, Map<String,String> extra ) {
+ *           System.out.println( name );
+ *       }
+ *   } );
+ * </pre>
+ * The href values are matched as they appear in the listing, so the
+ * template should describe the relative names (e.g. $Y$m$d.dat) when the
+ * listing uses relative links.  Character entities and percent-encoding are
+ * not decoded.
+ * @author jbf
+ */
+public class HtmlIndexScanner {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    /**
+     * the longest href value considered, longer values are skipped.
+     */
+    public static final int DEFAULT_MAX_HREF_LENGTH= 4096;
+
+    private static final int BUFFER_SIZE= 16384;
+
+    private static final byte[] HREF= "href".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * looking for the letters h-r-e-f.
+     */
+    private static final int STATE_SCAN=0;
+
+    /**
+     * found href, looking for the equals sign.
+     */
+    private static final int STATE_EQUALS=1;
+
+    /**
+     * found the equals sign, looking for the start of the value.
+     */
+    private static final int STATE_VALUE_START=2;
+
+    /**
+     * reading the value.
+     */
+    private static final int STATE_VALUE=3;
+
+    /**
+     * receives each of the href values which parse.
+     */
+    public interface Listener {
+
+        /**
+         * called for each href which is parsed by the template.
+         * @param name the href value
+         * @param timeRange the fourteen-component time range parsed from the name
+         * @param extra extra fields, like $(x;name=sc), found in the name
+         */
+        public void found( String name, int[] timeRange, Map<String,String> extra );
+
+    }
+
+    private final URITemplate template;
+    private final byte[] prefix;
+    private final byte[] suffix;
+    private final int maxHrefLength;
+
+    /**
+     * create a scanner for names matching the template.
+     * @param template the template, which describes the href values in the listing.
+     */
+    public HtmlIndexScanner( URITemplate template ) {
+        this( template, DEFAULT_MAX_HREF_LENGTH );
+    }
+
+    /**
+     * create a scanner for names matching the template.
+     * @param template the template, which describes the href values in the listing.
+     * @param maxHrefLength the longest href value considered.
+     */
+    public HtmlIndexScanner( URITemplate template, int maxHrefLength ) {
+        this.template= template;
+        this.prefix= template.getLiteralPrefix().getBytes(StandardCharsets.UTF_8);
+        this.suffix= template.getLiteralSuffix().getBytes(StandardCharsets.UTF_8);
+        if ( maxHrefLength<this.prefix.length+this.suffix.length ) {
+            throw new IllegalArgumentException("maxHrefLength is shorter than the template literals");
+        }
+        this.maxHrefLength= maxHrefLength;
+    }
+
+    /**
+     * open the URL and scan the listing.
+     * @param url the location of the listing, typically an http URL ending in a slash.
+     * @param listener receives each name which parses.
+     * @return the number of names found.
+     * @throws IOException when the listing cannot be read, or an HTTP error code is returned.
+     */
+    public int scan( URL url, Listener listener ) throws IOException {
+        URLConnection connect= url.openConnection();
+        if ( connect instanceof HttpURLConnection ) {
+            HttpURLConnection hconnect= (HttpURLConnection)connect;
+            int code= hconnect.getResponseCode();
+            if ( code!=HttpURLConnection.HTTP_OK ) {
+                hconnect.disconnect();
+                throw new IOException( "unable to read listing, got "+code+" from "+url );
+            }
+        }
+        try ( InputStream in= connect.getInputStream() ) {
+            return scan( in, listener );
+        }
+    }
+
+    /**
+     * scan the stream for href values which are parsed by the template.  The
+     * stream is not closed.
+     * @param in the stream containing HTML
+     * @param listener receives each name which parses.
+     * @return the number of names found.
+     * @throws IOException when the stream cannot be read.
+     */
+    @SuppressWarnings("fallthrough") // the first byte of an unquoted value is handled by STATE_VALUE.
+    public int scan( InputStream in, Listener listener ) throws IOException {
+        byte[] buf= new byte[BUFFER_SIZE];
+        byte[] value= new byte[maxHrefLength];
+
+        int state= STATE_SCAN;
+        int hrefIndex= 0;
+        byte quote= 0;      // the quote character, or zero for unquoted values.
+        int valueLength= 0;
+        boolean candidate= true; // false once the value is known not to match.
+
+        int count= 0;
+
+        int n= in.read(buf);
+        while ( n!=-1 ) {
+            for ( int i=0; i<n; i++ ) {
+                byte b= buf[i];
+                switch ( state ) {
+                    case STATE_SCAN:
+                        byte lc= ( b>='A' && b<='Z' ) ? (byte)( b+32 ) : b;
+                        if ( lc==HREF[hrefIndex] ) {
+                            hrefIndex++;
+                            if ( hrefIndex==HREF.length ) {
+                                hrefIndex= 0;
+                                state= STATE_EQUALS;
+                            }
+                        } else {
+                            hrefIndex= lc==HREF[0] ? 1 : 0;
+                        }
+                        break;
+                    case STATE_EQUALS:
+                        if ( b=='=' ) {
+                            state= STATE_VALUE_START;
+                        } else if ( !isWhitespace(b) ) {
+                            state= STATE_SCAN;
+                        }
+                        break;
+                    case STATE_VALUE_START:
+                        if ( isWhitespace(b) ) {
+                            break;
+                        } else if ( b=='>' ) {
+                            state= STATE_SCAN;
+                            break;
+                        }
+                        valueLength= 0;
+                        candidate= true;
+                        state= STATE_VALUE;
+                        if ( b=='"' || b=='\'' ) {
+                            quote= b;
+                            break;
+                        } else {
+                            quote= 0;
+                        }
+                        // fall through, since the byte is part of an unquoted value.
+                    case STATE_VALUE:
+                        boolean end= quote==0 ? ( isWhitespace(b) || b=='>' ) : b==quote;
+                        if ( end ) {
+                            if ( candidate && valueLength>=suffix.length+prefix.length && endsWithSuffix( value, valueLength ) ) {
+                                if ( handle( new String( value, 0, valueLength, StandardCharsets.UTF_8 ), listener ) ) {
+                                    count++;
+                                }
+                            }
+                            state= STATE_SCAN;
+                        } else if ( candidate ) {
+                            if ( valueLength==maxHrefLength ) {
+                                candidate= false;
+                            } else if ( valueLength<prefix.length && prefix[valueLength]!=b ) {
+                                candidate= false;
+                            } else {
+                                value[valueLength++]= b;
+                            }
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("bad state");
+                }
+            }
+            n= in.read(buf);
+        }
+        return count;
+    }
+
+    /**
+     * parse the name and pass it on to the listener if it parses.
+     * @param name the href value
+     * @param listener the listener
+     * @return true if the name was parsed.
+     */
+    private boolean handle( String name, Listener listener ) {
+        Map<String,String> extra= new HashMap<>();
+        int[] timeRange;
+        try {
+            timeRange= template.parse( name, extra );
+        } catch ( ParseException | IllegalArgumentException ex ) {
+            logger.log( Level.FINER, "href does not parse: {0}", name );
+            return false;
+        }
+        listener.found( name, timeRange, extra );
+        return true;
+    }
+
+    private boolean endsWithSuffix( byte[] value, int valueLength ) {
+        int offset= valueLength-suffix.length;
+        for ( int i=0; i<suffix.length; i++ ) {
+            if ( value[offset+i]!=suffix[i] ) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace( byte b ) {
+        return b==' ' || b=='\t' || b=='\n' || b=='\r' || b=='\f';
+    }
+
+}
@@ -0,0 +1,201 @@
+
+package org.hapiserver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Formats names for a sequence of intervals, rewriting only the fields
+ * which change from one name to the next.  When stepping daily through a
+ * year with $Y/$m/$Y$m$d.dat, most names differ from the previous one only
+ * in the day, so only those characters are written.  This is possible when
+ * each field is always formatted with the same number of characters at the
+ * same position, as with /data/$Y/$Y$j.cdf.  Other templates, such as those
+ * with $v or with a stop time, are formatted in full each time.  For example:<pre>
+ *   IncrementalFormatter f= new IncrementalFormatter( new URITemplate("$Y/$m/$Y$m$d.dat") );
+ *   for ( int[] t: times ) {
+ *       String name= f.format( t, t );
+ *   }
+ * </pre>
+ * The intervals may be in any order, but the fewest characters are written
+ * when consecutive intervals are formatted.  A formatter is not thread-safe.
+ * @author jbf
+ */
+public class IncrementalFormatter {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    private static final int ALL_COMPONENTS= ( 1 << TimeUtil.TIME_DIGITS ) - 1;
+
+    private final URITemplate ut;
+    private final Map<String,String> extra;
+
+    /**
+     * true when the fields can be rewritten in place.
+     */
+    private final boolean incremental;
+
+    /**
+     * the previous name, and the time it was formatted from.
+     */
+    private final char[] buf;
+    private final int[] previous= new int[TimeUtil.TIME_DIGITS];
+    private final int[] time= new int[TimeUtil.TIME_DIGITS];
+    private boolean valid= false;
+
+    private final int[] offsets;
+    private final int[] dependencies;
+
+    /**
+     * create a formatter for the template.
+     * @param ut the template.
+     */
+    public IncrementalFormatter( URITemplate ut ) {
+        this( ut, Collections.emptyMap() );
+    }
+
+    /**
+     * create a formatter for the template.
+     * @param ut the template.
+     * @param extra extra parameters, used when names are formatted in full.
+     */
+    public IncrementalFormatter( URITemplate ut, Map<String,String> extra ) {
+        this.ut= ut;
+        this.extra= extra;
+        String problem= ut.getFixedLayoutProblem();
+        char[] buf1= null;
+        if ( problem==null ) {
+            // the literal text is placed once, and never rewritten.
+            int[] t= new int[] { 2000, 1, 1, 0, 0, 0, 0 };
+            try {
+                String s= ut.formatStartStopRange( t, t.clone(), extra );
+                if ( s.length()!=ut.getFixedLength() ) {
+                    problem= "the names do not have the fixed length";
+                }
+                buf1= s.toCharArray();
+            } catch ( IllegalArgumentException ex ) {
+                problem= ex.getMessage();
+            }
+        }
+        this.buf= buf1;
+        if ( problem!=null ) {
+            logger.log( Level.FINE, "names will be formatted in full because {0}: {1}", new Object[] { problem, ut } );
+        }
+        this.incremental= problem==null;
+        int n= ut.getFieldCount();
+        this.offsets= new int[n];
+        this.dependencies= new int[n];
+        if ( incremental ) {
+            for ( int i=1; i<n; i++ ) {
+                offsets[i]= ut.getFieldOffset(i);
+                dependencies[i]= ut.getFieldDependencies(i);
+            }
+        }
+    }
+
+    /**
+     * @return true if only the fields which change are rewritten, or false
+     * if each name is formatted in full.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * format the name for the interval.  The result is the same as
+     * formatStartStopRange.
+     * @param startTime seven-component start time, which is not modified.
+     * @param stopTime seven-component stop time, which is not modified.
+     * @return the formatted name.
+     * @see URITemplate#formatStartStopRange(int[], int[], java.util.Map)
+     */
+    public String format( int[] startTime, int[] stopTime ) {
+        if ( update( startTime ) ) {
+            return new String( buf );
+        } else {
+            return ut.formatStartStopRange( startTime.clone(), stopTime.clone(), extra );
+        }
+    }
+
+    /**
+     * format the name for the interval, appending it to the Appendable.
+     * A Writer is given the characters directly, so no String is created.
+     * @param startTime seven-component start time, which is not modified.
+     * @param stopTime seven-component stop time, which is not modified.
+     * @param out the Appendable, such as a Writer for a response.
+     * @throws IOException when the Appendable throws IOException.
+     */
+    public void formatTo( int[] startTime, int[] stopTime, Appendable out ) throws IOException {
+        if ( out instanceof StringBuilder ) {
+            formatTo( startTime, stopTime, (StringBuilder)out );
+            return;
+        }
+        if ( update( startTime ) ) {
+            if ( out instanceof Writer ) {
+                ((Writer)out).write( buf );
+            } else {
+                for ( char c: buf ) {
+                    out.append( c );
+                }
+            }
+        } else {
+            ut.formatTo( startTime.clone(), stopTime.clone(), extra, out );
+        }
+    }
+
+    /**
+     * format the name for the interval, appending it to the StringBuilder.
+     * No String is created, so a StringBuilder can be reused for many names.
+     * @param startTime seven-component start time, which is not modified.
+     * @param stopTime seven-component stop time, which is not modified.
+     * @param out the StringBuilder, to which the name is appended.
+     */
+    public void formatTo( int[] startTime, int[] stopTime, StringBuilder out ) {
+        if ( update( startTime ) ) {
+            out.append( buf );
+        } else {
+            ut.formatTo( startTime.clone(), stopTime.clone(), extra, out );
+        }
+    }
+
+    /**
+     * rewrite the fields which depend on the time components which changed.
+     * @param startTime seven-component start time
+     * @return false if the name must be formatted in full.
+     */
+    private boolean update( int[] startTime ) {
+        if ( !incremental ) return false;
+        System.arraycopy( startTime, 0, time, 0, TimeUtil.TIME_DIGITS );
+        int changed;
+        if ( valid ) {
+            changed= 0;
+            for ( int k=0; k<TimeUtil.TIME_DIGITS; k++ ) {
+                if ( time[k]!=previous[k] ) changed|= 1<<k;
+            }
+            if ( changed==0 ) return true;
+        } else {
+            changed= ALL_COMPONENTS;
+        }
+        for ( int i=1; i<offsets.length; i++ ) {
+            if ( ( dependencies[i] & changed )!=0 ) {
+                if ( !ut.formatField( i, time, buf, offsets[i] ) ) {
+                    // the value is too wide, so the fields written so far are not consistent.
+                    valid= false;
+                    return false;
+                }
+            }
+        }
+        System.arraycopy( startTime, 0, previous, 0, TimeUtil.TIME_DIGITS );
+        valid= true;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "IncrementalFormatter " + ut.toString() + ( incremental ? "" : " (formatted in full)" );
+    }
+}
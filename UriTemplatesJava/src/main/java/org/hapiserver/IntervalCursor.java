@@ -0,0 +1,264 @@
+
+package org.hapiserver;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Steps through the names formatted by a template which cover a time range,
+ * one at a time.  This produces the same names as URITemplate.formatRange,
+ * but only the current interval is held, so the memory used does not
+ * depend on how long the time range is.  For example:<pre>
+ *   IntervalCursor c= new IntervalCursor( new URITemplate("$Y$m$d$H$M.dat"), "2010-01-01", "2020-01-01", extra );
+ *   while ( c.hasNext() ) {
+ *       String name= c.next();
+ *       int[] start= c.getStartTime();
+ *       ...
+ *   }
+ * </pre>
+ * When the template has a fixed cadence, the intervals are found by
+ * counting cadence units from the start of the range, so no names are
+ * parsed.  Otherwise, such as when a field handler sets the time, each
+ * name is formatted and then parsed to find the next interval.
+ * The arrays returned by getStartTime and getStopTime are reused for each
+ * interval, so they should be copied if they are to be kept.  A cursor is
+ * not thread-safe, and the template should not be used by other threads
+ * while the cursor is in use.
+ * @author jbf
+ * @see URITemplate#formatRange(java.lang.String, java.lang.String, java.lang.String, java.util.Map)
+ */
+public class IntervalCursor {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    private final URITemplate ut;
+    private final Map<String,String> extra;
+
+    private final int[] rangeStart;
+    private final int[] rangeStop;
+
+    /**
+     * the start of the next interval, which may need aligning when firstLoop is true.
+     */
+    private final int[] ptr= new int[TimeUtil.TIME_DIGITS];
+    private boolean firstLoop= true;
+    private boolean done= false;
+
+    private final int[] start= new int[TimeUtil.TIME_DIGITS];
+    private final int[] stop= new int[TimeUtil.TIME_DIGITS];
+    private final int[] work= new int[TimeUtil.TIME_DIGITS];
+    private final int[] work2= new int[TimeUtil.TIME_DIGITS];
+    private String name= null;
+
+    /**
+     * true when the current name was appended by next(StringBuilder) and is formatted when getName is called.
+     */
+    private boolean unnamed= false;
+
+    /**
+     * true when the intervals are found by index rather than by parsing.
+     */
+    private boolean stepping= false;
+
+    /**
+     * the index of the next interval, and the index after the last, when stepping.
+     */
+    private long index;
+    private long end;
+
+    /**
+     * null, or the formatter which rewrites only the fields which change, when stepping.
+     */
+    private IncrementalFormatter formatter= null;
+
+    /**
+     * create a cursor for the names covering the time range.
+     * @param ut the template.  Its context is set when the template needs it.
+     * @param startTimeStr the beginning of the interval to cover
+     * @param stopTimeStr the end of the interval to cover
+     * @param extra extra named parameters
+     * @throws IllegalArgumentException when the start time is after the stop time.
+     */
+    public IntervalCursor( URITemplate ut, String startTimeStr, String stopTimeStr, Map<String,String> extra ) {
+        this( ut, TimeUtil.isoTimeToArray(startTimeStr), TimeUtil.isoTimeToArray(stopTimeStr), extra );
+    }
+
+    /**
+     * create a cursor for the names covering the time range.
+     * @param ut the template.  Its context is set when the template needs it.
+     * @param startTime the seven-component beginning of the interval to cover
+     * @param stopTime the seven-component end of the interval to cover
+     * @param extra extra named parameters
+     * @throws IllegalArgumentException when the start time is after the stop time.
+     */
+    public IntervalCursor( URITemplate ut, int[] startTime, int[] stopTime, Map<String,String> extra ) {
+        this.ut= ut;
+        this.extra= extra;
+        this.rangeStart= Arrays.copyOf( startTime, TimeUtil.TIME_DIGITS );
+        this.rangeStop= Arrays.copyOf( stopTime, TimeUtil.TIME_DIGITS );
+        TimeUtil.normalizeTime( rangeStart );
+        TimeUtil.normalizeTime( rangeStop );
+        if ( TimeUtil.compare( rangeStart, rangeStop )>0 ) {
+            throw new IllegalArgumentException("start time must be before or equal to stop time.");
+        }
+        int externalContext= ut.getExternalContext();
+        if ( externalContext>0 ) {
+            int[] context= new int[TimeUtil.TIME_DIGITS];
+            System.arraycopy( rangeStop, 0, context, 0, externalContext );
+            ut.setContext(context);
+        }
+        System.arraycopy( rangeStart, 0, ptr, 0, TimeUtil.TIME_DIGITS );
+        if ( ut.hasFixedCadence() ) {
+            try {
+                int[] tr= new int[2*TimeUtil.TIME_DIGITS];
+                System.arraycopy( rangeStart, 0, tr, 0, TimeUtil.TIME_DIGITS );
+                System.arraycopy( rangeStop, 0, tr, TimeUtil.TIME_DIGITS, TimeUtil.TIME_DIGITS );
+                index= ut.intervalIndexOf( rangeStart );
+                end= index + ut.countIntervals( tr );
+                stepping= true;
+                IncrementalFormatter f= new IncrementalFormatter( ut, extra );
+                if ( f.isIncremental() ) formatter= f;
+            } catch ( IllegalArgumentException ex ) {
+                logger.log( Level.FINE, "intervals will be parsed: {0}", ex.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * @return true if there is another interval.
+     */
+    public boolean hasNext() {
+        if ( stepping ) return index<end;
+        return !done && TimeUtil.compare( ptr, rangeStop )<0;
+    }
+
+    /**
+     * move to the next interval.
+     * @return the name formatted for the interval.
+     * @throws ParseException when the formatted name cannot be parsed.
+     * @throws IllegalArgumentException when there is no next interval, or the template fails to advance.
+     */
+    public String next() throws ParseException {
+        if ( !hasNext() ) {
+            throw new IllegalArgumentException("no more intervals");
+        }
+        if ( stepping ) {
+            ut.intervalStart( index, start );
+            ut.intervalStart( index+1, stop );
+            index++;
+            unnamed= false;
+            name= formatter!=null ? formatter.format( start, stop ) : format( start );
+            return name;
+        }
+        unnamed= false;
+        String s1= format( ptr );
+        int[] tta= ut.parse( s1, new HashMap<>() );
+        if ( firstLoop ) {
+            System.arraycopy( tta, 0, ptr, 0, TimeUtil.TIME_DIGITS );
+            s1= format( ptr );
+            firstLoop= false;
+        }
+        System.arraycopy( tta, 0, start, 0, TimeUtil.TIME_DIGITS );
+        System.arraycopy( tta, TimeUtil.TIME_DIGITS, stop, 0, TimeUtil.TIME_DIGITS );
+        if ( Arrays.equals( start, stop ) ) {
+            // start and stop are in the template, so there is no looping.
+            System.arraycopy( rangeStart, 0, work, 0, TimeUtil.TIME_DIGITS );
+            System.arraycopy( rangeStop, 0, work2, 0, TimeUtil.TIME_DIGITS );
+            name= ut.formatStartStop( work, work2, new HashMap<>() );
+            done= true;
+            return name;
+        }
+        name= s1;
+        if ( Arrays.equals( ptr, stop ) ) {
+            throw new IllegalArgumentException("template fails to advance");
+        }
+        System.arraycopy( stop, 0, ptr, 0, TimeUtil.TIME_DIGITS );
+        return name;
+    }
+
+    /**
+     * move to the next interval, appending its name to the StringBuilder.
+     * When the intervals are stepped, the name is formatted directly into
+     * the StringBuilder, so a StringBuilder reused for each name avoids
+     * creating a String for each.
+     * @param out the StringBuilder, to which the name is appended.
+     * @throws ParseException when the formatted name cannot be parsed.
+     * @throws IllegalArgumentException when there is no next interval, or the template fails to advance.
+     */
+    public void next( StringBuilder out ) throws ParseException {
+        if ( !stepping ) {
+            out.append( next() );
+            return;
+        }
+        if ( !hasNext() ) {
+            throw new IllegalArgumentException("no more intervals");
+        }
+        ut.intervalStart( index, start );
+        ut.intervalStart( index+1, stop );
+        index++;
+        name= null;
+        unnamed= true;
+        if ( formatter!=null ) {
+            formatter.formatTo( start, stop, out );
+        } else {
+            System.arraycopy( start, 0, work, 0, TimeUtil.TIME_DIGITS );
+            System.arraycopy( start, 0, work2, 0, TimeUtil.TIME_DIGITS );
+            ut.formatStartStopTo( work, work2, extra, out );
+        }
+    }
+
+    private String format( int[] t ) {
+        System.arraycopy( t, 0, work, 0, TimeUtil.TIME_DIGITS );
+        System.arraycopy( t, 0, work2, 0, TimeUtil.TIME_DIGITS );
+        return ut.formatStartStop( work, work2, extra );
+    }
+
+    /**
+     * move so that the next interval is the one containing the time.  The
+     * time may be before the current position, and names before the start
+     * of the range can be found this way.
+     * @param time the seven-component time.
+     */
+    public void seek( int[] time ) {
+        System.arraycopy( time, 0, ptr, 0, TimeUtil.TIME_DIGITS );
+        TimeUtil.normalizeTime( ptr );
+        if ( stepping ) {
+            index= TimeUtil.compare( ptr, rangeStop )<0 ? ut.intervalIndexOf( ptr ) : end;
+        }
+        firstLoop= true;
+        done= false;
+        name= null;
+        unnamed= false;
+    }
+
+    /**
+     * @return the name of the current interval, or null before next is called.
+     */
+    public String getName() {
+        if ( unnamed ) {
+            name= formatter!=null ? formatter.format( start, stop ) : format( start );
+            unnamed= false;
+        }
+        return name;
+    }
+
+    /**
+     * return the start of the current interval.  The array is reused.
+     * @return the seven-component start time.
+     */
+    public int[] getStartTime() {
+        return start;
+    }
+
+    /**
+     * return the stop of the current interval.  The array is reused.
+     * @return the seven-component stop time.
+     */
+    public int[] getStopTime() {
+        return stop;
+    }
+}
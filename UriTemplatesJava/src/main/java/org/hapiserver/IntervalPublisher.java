@@ -0,0 +1,260 @@
+
+package org.hapiserver;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the intervals covering a time range to subscribers as they
+ * request them, following the Reactive Streams rules of
+ * java.util.concurrent.Flow.  This library is built for Java 8, so the
+ * Subscriber and Subscription interfaces here have the same methods as
+ * those in Flow, and adapting them is a matter of delegating each method.
+ * <p>
+ * Each subscriber gets its own IntervalCursor, and an interval is only
+ * formatted when the subscriber has requested it, so a slow subscriber on
+ * a long time range holds just one interval.  Intervals are delivered on
+ * the thread calling request, and a subscriber may call request from
+ * within onNext.  For example:<pre>
+ *   IntervalPublisher p= new IntervalPublisher( "$Y/$Y$m$d.dat", "2000-01-01", "2024-01-01", extra );
+ *   p.subscribe( new IntervalPublisher.Subscriber() {
+ *       Subscription s;
+ *       public void onSubscribe( Subscription s ) { this.s= s; s.request(10); }
+ *       public void onNext( Interval i ) { send( i.getName() ); s.request(1); }
+ *       public void onError( Throwable t ) { ... }
+ *       public void onComplete() { ... }
+ *   });
+ * </pre>
+ * @author jbf
+ * @see IntervalCursor
+ */
+public class IntervalPublisher {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    /**
+     * one interval, with the name formatted for it.
+     */
+    public static class Interval {
+        private final String name;
+        private final int[] startTime;
+        private final int[] stopTime;
+
+        Interval( String name, int[] startTime, int[] stopTime ) {
+            this.name= name;
+            this.startTime= startTime;
+            this.stopTime= stopTime;
+        }
+
+        /**
+         * @return the formatted name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the seven-component start time.
+         */
+        public int[] getStartTime() {
+            return Arrays.copyOf( startTime, TimeUtil.TIME_DIGITS );
+        }
+
+        /**
+         * @return the seven-component stop time.
+         */
+        public int[] getStopTime() {
+            return Arrays.copyOf( stopTime, TimeUtil.TIME_DIGITS );
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * receives the intervals, as Flow.Subscriber does.
+     */
+    public interface Subscriber {
+
+        /**
+         * called once, before any other method.
+         * @param subscription used to request intervals or cancel.
+         */
+        public void onSubscribe( Subscription subscription );
+
+        /**
+         * called with each interval, only after it has been requested.
+         * @param interval the interval.
+         */
+        public void onNext( Interval interval );
+
+        /**
+         * called when the intervals cannot be formatted, or request was
+         * called with a count which is not positive.  No more methods are called.
+         * @param throwable the problem.
+         */
+        public void onError( Throwable throwable );
+
+        /**
+         * called after the last interval.  No more methods are called.
+         */
+        public void onComplete();
+    }
+
+    /**
+     * link between the publisher and one subscriber, as Flow.Subscription is.
+     */
+    public interface Subscription {
+
+        /**
+         * request more intervals.
+         * @param n the number of intervals, which must be positive.
+         */
+        public void request( long n );
+
+        /**
+         * stop sending intervals.  A few may still arrive if they are being sent.
+         */
+        public void cancel();
+    }
+
+    private final String template;
+    private final String startTimeStr;
+    private final String stopTimeStr;
+    private final Map<String,String> extra;
+
+    /**
+     * create a publisher for the names covering the time range.
+     * @param template the template
+     * @param startTimeStr the beginning of the interval to cover
+     * @param stopTimeStr the end of the interval to cover
+     * @param extra extra named parameters
+     * @throws IllegalArgumentException when the template cannot be compiled.
+     */
+    public IntervalPublisher( String template, String startTimeStr, String stopTimeStr, Map<String,String> extra ) {
+        new URITemplate( template ); // fail now rather than in each subscription.
+        this.template= template;
+        this.startTimeStr= startTimeStr;
+        this.stopTimeStr= stopTimeStr;
+        this.extra= extra;
+    }
+
+    /**
+     * add the subscriber, which will receive the intervals from the start
+     * of the range as it requests them.
+     * @param subscriber the subscriber.
+     */
+    public void subscribe( Subscriber subscriber ) {
+        if ( subscriber==null ) throw new NullPointerException("subscriber is null");
+        IntervalCursor cursor;
+        try {
+            // each subscription has its own template, since templates are not thread-safe.
+            cursor= new IntervalCursor( new URITemplate(template), startTimeStr, stopTimeStr, extra );
+        } catch ( IllegalArgumentException ex ) {
+            subscriber.onSubscribe( new Subscription() {
+                @Override
+                public void request( long n ) {
+                }
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError( ex );
+            return;
+        }
+        CursorSubscription s= new CursorSubscription( cursor, subscriber );
+        subscriber.onSubscribe( s );
+        s.drain();
+    }
+
+    /**
+     * the subscription, which sends intervals while there is demand.
+     * Only one thread sends at a time: a thread which finds another sending
+     * leaves a note in wip, and the sending thread loops again.
+     */
+    private static class CursorSubscription implements Subscription {
+
+        private final IntervalCursor cursor;
+        private final Subscriber subscriber;
+        private final AtomicLong requested= new AtomicLong();
+        private final AtomicInteger wip= new AtomicInteger();
+        private volatile boolean cancelled= false;
+        /**
+         * the first request which was not positive, valid once badRequestSeen is set.
+         */
+        private volatile long badRequest= 0;
+        private volatile boolean badRequestSeen= false;
+        private boolean done= false;
+
+        CursorSubscription( IntervalCursor cursor, Subscriber subscriber ) {
+            this.cursor= cursor;
+            this.subscriber= subscriber;
+        }
+
+        @Override
+        public void request( long n ) {
+            if ( n<=0 ) {
+                if ( !badRequestSeen ) {
+                    badRequest= n;
+                    badRequestSeen= true;
+                }
+            } else {
+                long r, u;
+                do {
+                    r= requested.get();
+                    u= r+n;
+                    if ( u<0 ) u= Long.MAX_VALUE;
+                } while ( !requested.compareAndSet( r, u ) );
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled= true;
+        }
+
+        void drain() {
+            if ( wip.getAndIncrement()!=0 ) return;
+            int missed= 1;
+            do {
+                while ( !cancelled && !done ) {
+                    if ( badRequestSeen ) {
+                        done= true;
+                        subscriber.onError( new IllegalArgumentException("request must be positive: "+badRequest ) );
+                        break;
+                    }
+                    if ( !cursor.hasNext() ) {
+                        done= true;
+                        subscriber.onComplete();
+                        break;
+                    }
+                    long r= requested.get();
+                    if ( r==0 ) break;
+                    Interval interval;
+                    try {
+                        String name= cursor.next();
+                        interval= new Interval( name,
+                            Arrays.copyOf( cursor.getStartTime(), TimeUtil.TIME_DIGITS ),
+                            Arrays.copyOf( cursor.getStopTime(), TimeUtil.TIME_DIGITS ) );
+                    } catch ( ParseException | RuntimeException ex ) {
+                        logger.log( Level.FINE, "unable to format interval", ex );
+                        done= true;
+                        subscriber.onError( ex );
+                        break;
+                    }
+                    if ( r!=Long.MAX_VALUE ) requested.decrementAndGet();
+                    subscriber.onNext( interval );
+                }
+                missed= wip.addAndGet( -missed );
+            } while ( missed!=0 );
+        }
+    }
+}
@@ -0,0 +1,86 @@
+
+package org.hapiserver;
+
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator of the names of a fixed-cadence template, covering a span of
+ * interval indices.  Splitting divides the span at an interval boundary, and
+ * each part formats its own names, so parts can be used on different threads.
+ * @author jbf
+ * @see URITemplate#stream(int[], java.util.Map) 
+ */
+class IntervalSpliterator implements Spliterator<String> {
+
+    private final URITemplate ut;
+    private final Map<String,String> extra;
+
+    /**
+     * the index of the next interval, counting from the interval containing 2000-01-01.
+     */
+    private long index;
+
+    /**
+     * the index after the last interval.
+     */
+    private final long end;
+
+    /**
+     * @param ut the template, which must have a fixed cadence which has been checked.
+     * @param index the index of the first interval.
+     * @param end the index after the last interval.
+     * @param extra extra parameters
+     */
+    IntervalSpliterator( URITemplate ut, long index, long end, Map<String,String> extra ) {
+        this.ut= ut;
+        this.index= index;
+        this.end= end;
+        this.extra= extra;
+    }
+
+    @Override
+    public boolean tryAdvance( Consumer<? super String> action ) {
+        if ( index>=end ) return false;
+        action.accept( format( index++ ) );
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining( Consumer<? super String> action ) {
+        long i= index;
+        index= end;
+        for ( ; i<end; i++ ) {
+            action.accept( format( i ) );
+        }
+    }
+
+    private String format( long i ) {
+        int[] tr= ut.intervalRange( i );
+        int[] start= new int[TimeUtil.TIME_DIGITS];
+        int[] stop= new int[TimeUtil.TIME_DIGITS];
+        System.arraycopy( tr, 0, start, 0, TimeUtil.TIME_DIGITS );
+        System.arraycopy( tr, TimeUtil.TIME_DIGITS, stop, 0, TimeUtil.TIME_DIGITS );
+        return ut.formatStartStop( start, stop, extra );
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        long mid= index + ( end - index ) / 2;
+        if ( mid<=index ) return null;
+        Spliterator<String> prefix= new IntervalSpliterator( ut, index, mid, extra );
+        index= mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,220 @@
+
+package org.hapiserver;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A list of names stored one after another in a single char array, with
+ * a table of where each name starts.  Millions of names held as Strings
+ * each need an object header and an array, while here each name costs its
+ * characters and one int.  Each name is available as a CharSequence view
+ * onto the array, or can be copied out.  For example:<pre>
+ *   PackedNames names= URITemplate.formatRangePacked( "$Y/$Y$m$d$H$M.dat", "2000-01-01", "2020-01-01", extra );
+ *   for ( int i=0; i&lt;names.size(); i++ ) {
+ *       CharSequence name= names.get(i);
+ *       ...
+ *   }
+ * </pre>
+ * Names can only be added, so views remain valid as the list grows.  The
+ * list is not thread-safe while names are being added.
+ * @author jbf
+ * @see URITemplate#formatRangePacked(java.lang.String, java.lang.String, java.lang.String, java.util.Map)
+ */
+public class PackedNames implements Iterable<CharSequence> {
+
+    private char[] chars;
+
+    /**
+     * offsets[i] is the start of name i, and offsets[size] is the end of the last name.
+     */
+    private int[] offsets;
+    private int size= 0;
+
+    /**
+     * create an empty list.
+     */
+    public PackedNames() {
+        this( 16, 256 );
+    }
+
+    /**
+     * create an empty list with room for the names without growing.
+     * @param names the number of names expected.
+     * @param chars the total number of characters expected.
+     */
+    public PackedNames( int names, int chars ) {
+        this.chars= new char[Math.max( 1, chars )];
+        this.offsets= new int[Math.max( 1, names )+1];
+    }
+
+    /**
+     * add the name to the end of the list.
+     * @param name the name.
+     */
+    public void add( CharSequence name ) {
+        int n= name.length();
+        int end= offsets[size];
+        if ( end+n>chars.length ) {
+            long len= Math.max( (long)chars.length*2, (long)end+n );
+            if ( len>Integer.MAX_VALUE-8 ) {
+                if ( (long)end+n>Integer.MAX_VALUE-8 ) throw new IllegalArgumentException("too many characters for one array");
+                len= Integer.MAX_VALUE-8;
+            }
+            chars= Arrays.copyOf( chars, (int)len );
+        }
+        if ( size+1==offsets.length ) {
+            offsets= Arrays.copyOf( offsets, offsets.length*2 );
+        }
+        if ( name instanceof String ) {
+            ((String)name).getChars( 0, n, chars, end );
+        } else if ( name instanceof StringBuilder ) {
+            ((StringBuilder)name).getChars( 0, n, chars, end );
+        } else {
+            for ( int i=0; i<n; i++ ) {
+                chars[end+i]= name.charAt(i);
+            }
+        }
+        size++;
+        offsets[size]= end+n;
+    }
+
+    /**
+     * @return the number of names.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * return a view of the name.  No characters are copied.
+     * @param i the index, from 0 to size()-1.
+     * @return the name.
+     */
+    public CharSequence get( int i ) {
+        checkIndex(i);
+        return new Name( offsets[i], offsets[i+1] );
+    }
+
+    /**
+     * return the name as a String.
+     * @param i the index, from 0 to size()-1.
+     * @return the name.
+     */
+    public String getString( int i ) {
+        checkIndex(i);
+        return new String( chars, offsets[i], offsets[i+1]-offsets[i] );
+    }
+
+    /**
+     * @param i the index, from 0 to size()-1.
+     * @return the length of the name.
+     */
+    public int length( int i ) {
+        checkIndex(i);
+        return offsets[i+1]-offsets[i];
+    }
+
+    /**
+     * copy the characters of the name into the array.
+     * @param i the index, from 0 to size()-1.
+     * @param dest the array
+     * @param destOffset the position in dest of the first character.
+     * @return the number of characters copied.
+     */
+    public int getChars( int i, char[] dest, int destOffset ) {
+        checkIndex(i);
+        int n= offsets[i+1]-offsets[i];
+        System.arraycopy( chars, offsets[i], dest, destOffset, n );
+        return n;
+    }
+
+    /**
+     * return a read-only CharBuffer of all the names, one after another.
+     * Name i is found from getOffset(i) to getOffset(i+1).
+     * @return the buffer.
+     */
+    public CharBuffer getCharBuffer() {
+        return CharBuffer.wrap( chars, 0, offsets[size] ).asReadOnlyBuffer();
+    }
+
+    /**
+     * return the position of the name within getCharBuffer.
+     * @param i the index, from 0 to size(), where size() gives the end of the last name.
+     * @return the position.
+     */
+    public int getOffset( int i ) {
+        if ( i<0 || i>size ) throw new IndexOutOfBoundsException("index "+i+" is not between 0 and "+size);
+        return offsets[i];
+    }
+
+    /**
+     * return the names as Strings.
+     * @return the names.
+     */
+    public String[] toArray() {
+        String[] result= new String[size];
+        for ( int i=0; i<size; i++ ) {
+            result[i]= getString(i);
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<CharSequence> iterator() {
+        return new Iterator<CharSequence>() {
+            int i= 0;
+            @Override
+            public boolean hasNext() {
+                return i<size;
+            }
+            @Override
+            public CharSequence next() {
+                if ( i>=size ) throw new NoSuchElementException();
+                return get( i++ );
+            }
+        };
+    }
+
+    private void checkIndex( int i ) {
+        if ( i<0 || i>=size ) throw new IndexOutOfBoundsException("index "+i+" is not between 0 and "+(size-1));
+    }
+
+    /**
+     * view of the characters of one name.  The array is looked up each
+     * time, since it is replaced when the list grows.
+     */
+    private class Name implements CharSequence {
+        private final int start;
+        private final int end;
+
+        Name( int start, int end ) {
+            this.start= start;
+            this.end= end;
+        }
+
+        @Override
+        public int length() {
+            return end-start;
+        }
+
+        @Override
+        public char charAt( int index ) {
+            if ( index<0 || index>=end-start ) throw new IndexOutOfBoundsException("index "+index+" length "+(end-start));
+            return chars[start+index];
+        }
+
+        @Override
+        public CharSequence subSequence( int s, int e ) {
+            if ( s<0 || e>end-start || s>e ) throw new IndexOutOfBoundsException("subSequence "+s+","+e+" length "+(end-start));
+            return new Name( start+s, start+e );
+        }
+
+        @Override
+        public String toString() {
+            return new String( chars, start, end-start );
+        }
+    }
+}
@@ -0,0 +1,188 @@
+
+package org.hapiserver;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the results of parsing names with a template, for pollers which
+ * list the same directories again and again.  Names which failed to parse
+ * are remembered too, and parsing them again throws the same exception.
+ * <p>
+ * Entries are grouped into generations, where a generation is typically one
+ * poll.  Call newGeneration before each poll, and the names which were not
+ * seen in the previous poll are forgotten, so files which are removed do
+ * not stay in the cache.  The number of names is also limited, with the
+ * least recently used forgotten first.
+ * </p>
+ * For example:<pre>
+ *   ParseCache cache= new ParseCache( new URITemplate("$Y/$Y$m$d_v$v.cdf"), 100000 );
+ *   while ( polling ) {
+ *       cache.newGeneration();
+ *       for ( String name: listing() ) {
+ *           try {
+ *               int[] tr= cache.parse( name, extra );
+ *           } catch ( ParseException ex ) {
+ *               ...
+ *           }
+ *       }
+ *   }
+ * </pre>
+ * The methods are synchronized, so one cache can be shared by many threads.
+ * @author jbf
+ */
+public class ParseCache {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    private static class Parsed {
+        /**
+         * the fourteen-component time range, or null if the name did not parse.
+         */
+        final int[] timeRange;
+        final Map<String,String> extra;
+        final String error;
+        final int errorOffset;
+        long generation;
+
+        Parsed( int[] timeRange, Map<String,String> extra, long generation ) {
+            this.timeRange= timeRange;
+            this.extra= extra;
+            this.error= null;
+            this.errorOffset= 0;
+            this.generation= generation;
+        }
+
+        Parsed( ParseException ex, long generation ) {
+            this.timeRange= null;
+            this.extra= null;
+            this.error= ex.getMessage();
+            this.errorOffset= ex.getErrorOffset();
+            this.generation= generation;
+        }
+    }
+
+    private final URITemplate template;
+    private final int maxEntries;
+    private final LinkedHashMap<String,Parsed> entries;
+
+    private long generation= 0;
+
+    private long hits= 0;
+    private long misses= 0;
+    private long evictions= 0;
+
+    /**
+     * create a cache.
+     * @param template the template used to parse the names.
+     * @param maxEntries the maximum number of names remembered.
+     */
+    public ParseCache( URITemplate template, int maxEntries ) {
+        if ( maxEntries<1 ) throw new IllegalArgumentException("maxEntries must be at least 1");
+        this.template= template;
+        this.maxEntries= maxEntries;
+        this.entries= new LinkedHashMap<String,Parsed>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String,Parsed> eldest ) {
+                if ( size()>ParseCache.this.maxEntries ) {
+                    evictions++;
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        };
+    }
+
+    /**
+     * parse the name, using the remembered result if the name has been
+     * parsed before.  The result is the same as URITemplate.parse.
+     * @param name the name, such as a file name.
+     * @param extra map which receives the extra fields, such as the version.
+     * @return the fourteen-component time range, which may be modified by the caller.
+     * @throws ParseException when the name does not parse, either now or when it was first seen.
+     */
+    public synchronized int[] parse( String name, Map<String,String> extra ) throws ParseException {
+        Parsed e= entries.get(name);
+        if ( e!=null ) {
+            hits++;
+            e.generation= generation;
+        } else {
+            misses++;
+            try {
+                Map<String,String> extra1= new HashMap<>();
+                int[] tr= template.parse( name, extra1 );
+                e= new Parsed( tr, extra1.isEmpty() ? Collections.<String,String>emptyMap() : extra1, generation );
+            } catch ( ParseException ex ) {
+                e= new Parsed( ex, generation );
+            }
+            entries.put( name, e );
+        }
+        if ( e.timeRange==null ) {
+            throw new ParseException( e.error, e.errorOffset );
+        }
+        extra.putAll( e.extra );
+        return Arrays.copyOf( e.timeRange, e.timeRange.length );
+    }
+
+    /**
+     * start a new generation, such as a new poll.  The names which were not
+     * parsed during the generation just ended are forgotten.
+     */
+    public synchronized void newGeneration() {
+        int removed= 0;
+        Iterator<Parsed> it= entries.values().iterator();
+        while ( it.hasNext() ) {
+            if ( it.next().generation!=generation ) {
+                it.remove();
+                removed++;
+            }
+        }
+        evictions+= removed;
+        generation++;
+        logger.log( Level.FINE, "generation {0} starts with {1} names, {2} removed",
+            new Object[] { generation, entries.size(), removed } );
+    }
+
+    /**
+     * forget all the names.  The counters are not changed.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of names found in the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of names which were parsed, because they were not in the cache.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of names forgotten, because they were not seen in a generation or to keep within maxEntries.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of names currently remembered, including those which did not parse.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,364 @@
+
+package org.hapiserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the files covering a time range as one stream, in time order.  The
+ * names are found with URITemplate.formatRange, and while one file is being
+ * read the next files are opened on a background thread and read using
+ * AsynchronousFileChannel, so the reader does not wait for each file to be
+ * opened and read.  Files which do not exist are skipped.
+ * <p>
+ * Records are lines which start with an ISO8601 time, as in HAPI CSV.  The
+ * first and last files usually extend beyond the time range, and these are
+ * clipped so that only records with start&le;time&lt;stop are returned.  Lines
+ * which do not start with a time, such as headers, are not clipped.  Files
+ * which are entirely within the time range are passed through unchanged.
+ * </p>
+ * Each file is held in memory while it is read, so this is intended for
+ * granules such as daily or hourly files.
+ * @author jbf
+ */
+public class StitchingInputStream extends InputStream {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    /**
+     * the number of files loaded ahead of the one being read.
+     */
+    public static final int DEFAULT_PREFETCH= 2;
+
+    /**
+     * opens the files, so that slow file systems do not stall the reader.
+     */
+    private static final Executor OPENER= Executors.newCachedThreadPool( new ThreadFactory() {
+        int count=0;
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread t= new Thread( r, "StitchingInputStream-"+(count++) );
+            t.setDaemon(true);
+            return t;
+        }
+    } );
+
+    private final String[] names;
+    private final int[][] ranges;
+    private final int[] start;
+    private final int[] stop;
+    private final int prefetch;
+    private final Executor executor;
+
+    /**
+     * index of the next file to load.
+     */
+    private int next= 0;
+
+    private final Deque<Load> pending= new ArrayDeque<>();
+
+    private ByteBuffer current= null;
+
+    private boolean closed= false;
+
+    /**
+     * create a stream of the files formatted by the template which cover the time range.
+     * @param template the template, like /data/$Y/$Y$m$d.csv
+     * @param timeRange the fourteen-component time range.
+     * @throws ParseException when the names cannot be parsed by the template.
+     */
+    public StitchingInputStream( String template, int[] timeRange ) throws ParseException {
+        this( template, timeRange, Collections.<String,String>emptyMap(), DEFAULT_PREFETCH );
+    }
+
+    /**
+     * create a stream of the files formatted by the template which cover the time range.
+     * @param template the template, like /data/$Y/$Y$m$d.csv
+     * @param timeRange the fourteen-component time range.
+     * @param extra extra parameters used to format the names.
+     * @param prefetch the number of files to load ahead of the one being read.
+     * @throws ParseException when the names cannot be parsed by the template.
+     */
+    public StitchingInputStream( String template, int[] timeRange, Map<String,String> extra, int prefetch ) throws ParseException {
+        this( template, timeRange, extra, prefetch, OPENER );
+    }
+
+    /**
+     * create a stream which opens the files using the executor.
+     * @param template the template, like /data/$Y/$Y$m$d.csv
+     * @param timeRange the fourteen-component time range.
+     * @param extra extra parameters used to format the names.
+     * @param prefetch the number of files to load ahead of the one being read.
+     * @param executor runs the tasks which open each file and start reading it.
+     * @throws ParseException when the names cannot be parsed by the template.
+     */
+    StitchingInputStream( String template, int[] timeRange, Map<String,String> extra, int prefetch, Executor executor ) throws ParseException {
+        if ( prefetch<0 ) throw new IllegalArgumentException("prefetch must be zero or more");
+        this.executor= executor;
+        this.start= TimeUtil.getStartTime(timeRange);
+        this.stop= TimeUtil.getStopTime(timeRange);
+        TimeUtil.normalizeTime(this.start);
+        TimeUtil.normalizeTime(this.stop);
+        this.prefetch= prefetch;
+        this.names= URITemplate.formatRange( template,
+            TimeUtil.isoTimeFromArray( TimeUtil.getStartTime(timeRange) ),
+            TimeUtil.isoTimeFromArray( TimeUtil.getStopTime(timeRange) ), extra );
+        URITemplate ut= new URITemplate(template);
+        this.ranges= new int[names.length][];
+        for ( int i=0; i<names.length; i++ ) {
+            ranges[i]= ut.parse( names[i], new HashMap<>() );
+        }
+    }
+
+    /**
+     * return the names of the files covering the time range, including those which do not exist.
+     * @return the names
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ( !advance() ) return -1;
+        return current.get() & 0xFF;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if ( len==0 ) return 0;
+        if ( !advance() ) return -1;
+        int n= Math.min( len, current.remaining() );
+        current.get( b, off, n );
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current==null ? 0 : current.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed= true;
+        for ( Load l: pending ) {
+            l.cancel();
+        }
+        pending.clear();
+        current= null;
+    }
+
+    /**
+     * make sure there are bytes available in the current buffer, moving on
+     * to the next file when needed.
+     * @return false when all the files have been read.
+     */
+    private boolean advance() throws IOException {
+        if ( closed ) throw new IOException("stream is closed");
+        while ( current==null || !current.hasRemaining() ) {
+            Load l= pending.poll();
+            if ( l==null ) {
+                if ( next>=names.length ) return false;
+                l= load(next++);
+            }
+            schedule();
+            try {
+                current= l.result.get();
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            } catch ( ExecutionException ex ) {
+                Throwable cause= ex.getCause();
+                if ( cause instanceof IOException ) {
+                    throw (IOException)cause;
+                } else {
+                    throw new IOException(cause);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * start loading files until the prefetch queue is full.
+     */
+    private void schedule() {
+        while ( pending.size()<prefetch && next<names.length ) {
+            pending.add( load(next) );
+            next++;
+        }
+    }
+
+    /**
+     * a file being loaded.
+     */
+    private static class Load implements Runnable {
+        final String name;
+        /**
+         * the contents of the file, as it is read.
+         */
+        final CompletableFuture<ByteBuffer> source= new CompletableFuture<>();
+        /**
+         * the contents of the file, clipped if necessary.
+         */
+        CompletableFuture<ByteBuffer> result;
+        volatile AsynchronousFileChannel channel;
+
+        Load( String name ) {
+            this.name= name;
+        }
+
+        /**
+         * open the file and start reading it.  This runs on the executor.
+         */
+        @Override
+        public void run() {
+            if ( source.isDone() ) return;
+            Path p= Paths.get( name.startsWith("file:") ? name.substring(5) : name );
+            if ( !Files.exists(p) ) {
+                logger.log( Level.FINE, "file does not exist: {0}", name );
+                source.complete( ByteBuffer.allocate(0) );
+                return;
+            }
+            try {
+                final AsynchronousFileChannel ch= AsynchronousFileChannel.open( p, StandardOpenOption.READ );
+                channel= ch;
+                if ( source.isCancelled() ) { // close was called while the file was opened.
+                    closeQuietly(ch);
+                    return;
+                }
+                long size= ch.size();
+                if ( size>Integer.MAX_VALUE ) {
+                    closeQuietly(ch);
+                    throw new IOException("file is too large: "+name);
+                }
+                final ByteBuffer buf= ByteBuffer.allocate( (int)size );
+                ch.read( buf, 0, null, new CompletionHandler<Integer,Object>() {
+                    @Override
+                    public void completed( Integer n, Object attachment ) {
+                        if ( n>=0 && buf.hasRemaining() && !source.isCancelled() ) {
+                            ch.read( buf, buf.position(), null, this );
+                        } else {
+                            closeQuietly(ch);
+                            ((Buffer)buf).flip(); // Buffer, so this also runs on Java 8.
+                            source.complete(buf);
+                        }
+                    }
+                    @Override
+                    public void failed( Throwable exc, Object attachment ) {
+                        closeQuietly(ch);
+                        source.completeExceptionally(exc);
+                    }
+                });
+            } catch ( IOException | RuntimeException ex ) {
+                source.completeExceptionally(ex);
+            }
+        }
+
+        /**
+         * stop loading the file, closing the channel if it is open.
+         */
+        void cancel() {
+            source.cancel(false);
+            AsynchronousFileChannel ch= channel;
+            if ( ch!=null ) closeQuietly(ch);
+        }
+    }
+
+    /**
+     * start loading the file into a buffer, opening it on the executor.
+     * @param i the index of the file.
+     * @return the load, whose result provides the buffer, clipped if necessary.
+     */
+    private Load load( int i ) {
+        Load l= new Load( names[i] );
+        if ( TimeUtil.compare( TimeUtil.getStartTime(ranges[i]), start )<0 || TimeUtil.compare( TimeUtil.getStopTime(ranges[i]), stop )>0 ) {
+            l.result= l.source.thenApply( new Function<ByteBuffer,ByteBuffer>() {
+                @Override
+                public ByteBuffer apply( ByteBuffer buf ) {
+                    return clip(buf);
+                }
+            });
+        } else {
+            l.result= l.source;
+        }
+        executor.execute( l );
+        return l;
+    }
+
+    private static void closeQuietly( AsynchronousFileChannel channel ) {
+        try {
+            channel.close();
+        } catch ( IOException ex ) {
+            logger.log( Level.FINE, null, ex );
+        }
+    }
+
+    /**
+     * remove the records which are outside of the time range, compacting
+     * the lines which are kept at the beginning of the buffer.
+     * @param buf heap buffer containing the file.
+     * @return the buffer with the records outside of the range removed.
+     */
+    ByteBuffer clip( ByteBuffer buf ) {
+        byte[] bytes= buf.array();
+        int limit= buf.limit();
+        int write= 0;
+        int lineStart= 0;
+        int[] t= new int[TimeUtil.TIME_DIGITS];
+        while ( lineStart<limit ) {
+            int lineEnd= lineStart;
+            while ( lineEnd<limit && bytes[lineEnd]!='\n' ) lineEnd++;
+            if ( lineEnd<limit ) lineEnd++; // include the newline
+            if ( keepLine( bytes, lineStart, lineEnd, t ) ) {
+                System.arraycopy( bytes, lineStart, bytes, write, lineEnd-lineStart );
+                write+= lineEnd-lineStart;
+            }
+            lineStart= lineEnd;
+        }
+        return ByteBuffer.wrap( bytes, 0, write );
+    }
+
+    /**
+     * return true if the line does not start with a time, or the time is within the range.
+     * @param t array to receive the time of the line.
+     */
+    private boolean keepLine( byte[] bytes, int lineStart, int lineEnd, int[] t ) {
+        int i= lineStart;
+        while ( i<lineEnd ) {
+            byte b= bytes[i];
+            if ( b==',' || b==' ' || b=='\t' || b=='\r' || b=='\n' ) break;
+            i++;
+        }
+        int n= i-lineStart;
+        if ( n<4 || bytes[lineStart]<'0' || bytes[lineStart]>'9' ) return true;
+        try {
+            TimeUtil.isoTimeToArray( bytes, lineStart, n, t );
+        } catch ( IllegalArgumentException ex ) {
+            return true;
+        }
+        return TimeUtil.compare( t, start )>=0 && TimeUtil.compare( t, stop )<0;
+    }
+}
@@ -0,0 +1,223 @@
+
+package org.hapiserver;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A set of templates which can be searched for the templates matching a
+ * name.  Rather than trying to parse the name with every template, the
+ * templates are arranged in a trie by their literal text, so one pass over
+ * the name finds the few templates whose literals match.  The trie follows
+ * each template past its first field, with the characters of fields taken
+ * as any character, so /data/$Y/instA_$Y$j.cdf and /data/$Y/instB_$Y$j.cdf
+ * share the first part of the trie and then separate.  This continues until
+ * a field whose length is not fixed, like $v, and the literals after that
+ * are not in the trie.  The few templates found are then checked for their
+ * literal suffix and, when the fields have fixed lengths, the length of the
+ * name, and finally each parses the name, which checks its fields.  For example:<pre>
+ *   TemplateSet ts= new TemplateSet();
+ *   ts.add( "/data/ace/$Y/ace_$Y$m$d.cdf" );
+ *   ts.add( "/data/wind/$Y/wind_$Y$j.cdf" );
+ *   List&lt;TemplateSet.Match&gt; mm= ts.match( "/data/wind/2024/wind_2024001.cdf" );
+ * </pre>
+ * The methods are synchronized, since URITemplate.parse is not thread-safe.
+ * @author jbf
+ */
+public class TemplateSet {
+
+    private static final Logger logger= Logger.getLogger("hapiserver.uritemplates");
+
+    /**
+     * a template which matches a name, with the result of parsing the name.
+     */
+    public static class Match {
+        private final String template;
+        private final int[] timeRange;
+        private final Map<String,String> extra;
+
+        Match( String template, int[] timeRange, Map<String,String> extra ) {
+            this.template= template;
+            this.timeRange= timeRange;
+            this.extra= extra;
+        }
+
+        /**
+         * @return the template, as it was added to the set.
+         */
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * @return the fourteen-component time range parsed from the name.
+         */
+        public int[] getTimeRange() {
+            return timeRange;
+        }
+
+        /**
+         * @return the extra parameters parsed from the name, such as the version.
+         */
+        public Map<String,String> getExtra() {
+            return extra;
+        }
+
+        @Override
+        public String toString() {
+            return template + ": " + TimeUtil.isoTimeFromArray( TimeUtil.getStartTime(timeRange) )
+                + "/" + TimeUtil.isoTimeFromArray( TimeUtil.getStopTime(timeRange) );
+        }
+    }
+
+    /**
+     * node of the trie of literal text.  The templates whose literals at
+     * fixed positions end at this node are listed in templates.
+     */
+    private static class Node {
+        Map<Character,Node> children= null;
+        /**
+         * the node following any character, where a template has a field.
+         */
+        Node field= null;
+        List<Integer> templates= null;
+    }
+
+    private final Node root= new Node();
+
+    private final List<String> specs= new ArrayList<>();
+    private final List<URITemplate> templates= new ArrayList<>();
+    private final List<String> suffixes= new ArrayList<>();
+    private final List<Integer> fixedLengths= new ArrayList<>();
+
+    /**
+     * create an empty set.
+     */
+    public TemplateSet() {
+    }
+
+    /**
+     * create a set containing the templates.
+     * @param templates the templates.
+     */
+    public TemplateSet( Collection<String> templates ) {
+        for ( String t: templates ) {
+            add( t );
+        }
+    }
+
+    /**
+     * add the template to the set.
+     * @param template the template, like /data/$Y/$Y$m$d.cdf
+     * @throws IllegalArgumentException when the template cannot be compiled.
+     */
+    public synchronized void add( String template ) {
+        URITemplate ut= new URITemplate( template );
+        int index= templates.size();
+        specs.add( template );
+        templates.add( ut );
+        suffixes.add( ut.getLiteralSuffix() );
+        fixedLengths.add( ut.getFixedLength() );
+
+        Node node= root;
+        int pos= 0;
+        for ( int idigit=0; idigit<ut.getFieldCount(); idigit++ ) {
+            int offset= ut.getLiteralOffset( idigit );
+            if ( offset==-1 ) break;
+            for ( ; pos<offset; pos++ ) {
+                if ( node.field==null ) node.field= new Node();
+                node= node.field;
+            }
+            String literal= ut.getLiteral( idigit );
+            for ( int i=0; i<literal.length(); i++ ) {
+                if ( node.children==null ) node.children= new HashMap<>();
+                Character c= literal.charAt(i);
+                Node child= node.children.get(c);
+                if ( child==null ) {
+                    child= new Node();
+                    node.children.put( c, child );
+                }
+                node= child;
+            }
+            pos+= literal.length();
+        }
+        if ( node.templates==null ) node.templates= new ArrayList<>(1);
+        node.templates.add( index );
+    }
+
+    /**
+     * @return the number of templates in the set.
+     */
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    /**
+     * return all the templates which parse the name, in the order they
+     * were added.
+     * @param name the name, such as a file name or URL.
+     * @return the matches, which is empty when no template matches.
+     */
+    public synchronized List<Match> match( String name ) {
+        List<Integer> candidates= candidates( name );
+        if ( candidates.isEmpty() ) return Collections.emptyList();
+
+        List<Match> result= new ArrayList<>(1);
+        for ( Integer index: candidates ) {
+            int len= fixedLengths.get(index);
+            if ( len!=-1 && len!=name.length() ) continue;
+            if ( !name.endsWith( suffixes.get(index) ) ) continue;
+            Map<String,String> extra= new HashMap<>();
+            try {
+                int[] tr= templates.get(index).parse( name, extra );
+                result.add( new Match( specs.get(index), tr, extra ) );
+            } catch ( ParseException | IllegalArgumentException ex ) {
+                logger.log( Level.FINER, "{0} does not parse {1}", new Object[] { specs.get(index), name } );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * walk the trie with the name, following both the character and any
+     * field at each node, and return the templates whose literals all match.
+     * Each node is reached by one path, so no template is found twice.
+     * @param name the name
+     * @return the indices of the templates, in the order they were added.
+     */
+    synchronized List<Integer> candidates( String name ) {
+        List<Integer> candidates= new ArrayList<>();
+        List<Node> nodes= new ArrayList<>();
+        List<Node> nextNodes= new ArrayList<>();
+        nodes.add( root );
+        int i= 0;
+        while ( !nodes.isEmpty() ) {
+            for ( Node node: nodes ) {
+                if ( node.templates!=null ) candidates.addAll( node.templates );
+            }
+            if ( i==name.length() ) break;
+            Character c= name.charAt(i);
+            nextNodes.clear();
+            for ( Node node: nodes ) {
+                if ( node.children!=null ) {
+                    Node child= node.children.get(c);
+                    if ( child!=null ) nextNodes.add( child );
+                }
+                if ( node.field!=null ) nextNodes.add( node.field );
+            }
+            List<Node> t= nodes;
+            nodes= nextNodes;
+            nextNodes= t;
+            i++;
+        }
+        if ( candidates.size()>1 ) Collections.sort( candidates );
+        return candidates;
+    }
+}
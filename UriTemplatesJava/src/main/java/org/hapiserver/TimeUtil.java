@@ -5,6 +5,7 @@ import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.NavigableMap;
@@ -94,6 +95,43 @@ public class TimeUtil {
         {0, 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334, 365},
         {0, 0, 31, 60, 91, 121, 152, 182, 213, 244, 274, 305, 335, 366}
     };
+
+    /**
+     * the first and last years of the calendar tables.  fromJulianDay uses
+     * the tables within these years, and calculates otherwise.
+     */
+    private static final int TABLE_FIRST_YEAR = 1583;
+    private static final int TABLE_LAST_YEAR = 9000;
+
+    /**
+     * the Julian day of January 1st of each year from TABLE_FIRST_YEAR 
+     * through TABLE_LAST_YEAR+1, so the difference of neighbors is the
+     * length of the year.  This is 7419 ints, or about 29 kilobytes.
+     */
+    private static final int[] YEAR_START_JULIAN;
+
+    /**
+     * the month and day of month for each day of year.  DOY_MONTH[1][60] is 2, 
+     * for February 29th of a leap year.
+     */
+    private static final byte[][] DOY_MONTH = new byte[2][367];
+    private static final byte[][] DOY_DAY = new byte[2][367];
+
+    static {
+        YEAR_START_JULIAN= new int[TABLE_LAST_YEAR-TABLE_FIRST_YEAR+2];
+        for ( int y=TABLE_FIRST_YEAR; y<=TABLE_LAST_YEAR+1; y++ ) {
+            YEAR_START_JULIAN[y-TABLE_FIRST_YEAR]= julianDay( y, 1, 1 );
+        }
+        for ( int leap=0; leap<2; leap++ ) {
+            for ( int m=1; m<=12; m++ ) {
+                for ( int d=1; d<=DAYS_IN_MONTH[leap][m]; d++ ) {
+                    int doy= DAY_OFFSET[leap][m] + d;
+                    DOY_MONTH[leap][doy]= (byte)m;
+                    DOY_DAY[leap][doy]= (byte)d;
+                }
+            }
+        }
+    }
     
     /**
      * short English abbreviations for month names.  
@@ -118,38 +156,6 @@ public class TimeUtil {
         
     }
         
-    /**
-     * fast parser requires that each character of string is a digit.  Note this 
-     * does not check the the numbers are digits!
-     *
-     * @param s string containing an integer
-     * @return the integer
-     */
-    private static int parseInteger(String s) {
-        int result;
-        int length= s.length();
-        for (int i = 0; i < length; i++) {
-            char c = s.charAt(i);
-            if (c < 48 || c >= 58) {
-                throw new IllegalArgumentException("only digits are allowed in string");
-            }
-        }
-        switch (length) {
-            case 2:
-                result = 10 * (s.charAt(0) - 48) + (s.charAt(1) - 48);
-                return result;
-            case 3:
-                result = 100 * (s.charAt(0) - 48) + 10 * (s.charAt(1) - 48) + (s.charAt(2) - 48);
-                return result;
-            default:
-                result = 0;
-                for (int i = 0; i < s.length(); i++) {
-                    result = 10 * result + (s.charAt(i) - 48);
-                }
-                return result;
-        }
-    }
-
     /**
      * fast parser requires that each character of string is a digit.
      *
@@ -501,12 +507,7 @@ public class TimeUtil {
         if ( doy>dayOffset[13] ) {
             throw new IllegalArgumentException("doy must be less than or equal to "+dayOffset[13]);
         }        
-        for ( int i=12; i>1; i-- ) {
-            if ( dayOffset[i]<doy ) {
-                return i;
-            }
-        }
-        return 1;
+        return DOY_MONTH[leap][doy];
     }
 
     /**
@@ -854,6 +855,11 @@ public class TimeUtil {
             1000000 * c.get( Calendar.MILLISECOND ) };
     }
     
+    /**
+     * the relative times lastday-P1D, lasthour, etc.
+     */
+    private static final Pattern LAST_PATTERN= Pattern.compile("last([a-z]+)([\\+|\\-]P.*)?");
+
     /**
      * return seven-element array [ year, months, days, hours, minutes, seconds, nanoseconds ]
      * preserving the day of year notation if this was used. See the class
@@ -872,26 +878,25 @@ public class TimeUtil {
      * <li>lastday-P1D
      * <li>lasthour-PT1H
      * </ul>
+     * The characters are scanned once, without creating substrings, and digits
+     * of the fraction of the second beyond nanoseconds are ignored.
      *
      * @param time isoTime to decompose
      * @return the decomposed time
      * @throws IllegalArgumentException when the time cannot be parsed.
      * @see #isoTimeFromArray(int[])
      * @see #parseISO8601Time(java.lang.String) 
+     * @see #isoTimeToArray(java.lang.CharSequence, int[]) 
      */
     public static int[] isoTimeToArray(String time) {
-        int[] result;
-        if (time.length() == 4) {
-            result = new int[]{Integer.parseInt(time), 1, 1, 0, 0, 0, 0};
-        } else if ( time.startsWith("now") || time.startsWith("last") ) {
+        if ( time.startsWith("now") || time.startsWith("last") ) {
             int[] n;
             String remainder;
             if ( time.startsWith("now") ) {
                 n= now();
                 remainder= time.substring(3);
             } else {
-                Pattern p= Pattern.compile("last([a-z]+)([\\+|\\-]P.*)?");
-                Matcher m= p.matcher(time);
+                Matcher m= LAST_PATTERN.matcher(time);
                 if ( m.matches() ) {
                     n= now();
                     String unit= m.group(1);
@@ -947,81 +952,207 @@ public class TimeUtil {
             return now();
             
         } else {
-            if (time.length() < 7) {
-                throw new IllegalArgumentException("time must have 4 or greater than 7 characters");
-            }
-            if ( Character.isDigit(time.charAt(4)) && Character.isDigit(time.charAt(5)) ) {
-                throw new IllegalArgumentException("date and time must contain delimiters between fields");
+            int[] result= new int[TIME_DIGITS];
+            scanIsoTime( time, 0, time.length(), result );
+            return result;
+        }
+    }
+
+    /**
+     * decompose the time, writing the seven components into the caller's 
+     * array.  This is the same as isoTimeToArray(String), but the characters
+     * are scanned in place, so that times found within a larger text, or 
+     * in a char array wrapped with CharBuffer.wrap, are parsed without 
+     * creating strings.
+     * @param time isoTime to decompose
+     * @param result the seven-element array to receive the time.
+     * @throws IllegalArgumentException when the time cannot be parsed.
+     * @see #isoTimeToArray(java.lang.String) 
+     */
+    public static void isoTimeToArray( CharSequence time, int[] result ) {
+        int length= time.length();
+        if ( length>0 && ( time.charAt(0)=='n' || time.charAt(0)=='l' ) ) { // now and last are seldom used.
+            System.arraycopy( isoTimeToArray( time.toString() ), 0, result, 0, TIME_DIGITS );
+        } else {
+            scanIsoTime( time, 0, length, result );
+        }
+    }
+
+    /**
+     * decompose the time in ASCII bytes, such as a field of a record read 
+     * from a file, writing the seven components into the caller's array.
+     * @param bytes array containing the time
+     * @param offset index of the first byte of the time
+     * @param length the number of bytes in the time
+     * @param result the seven-element array to receive the time.
+     * @throws IllegalArgumentException when the time cannot be parsed.
+     * @see #isoTimeToArray(java.lang.String) 
+     */
+    public static void isoTimeToArray( byte[] bytes, int offset, int length, int[] result ) {
+        if ( offset<0 || length<0 || offset+length>bytes.length ) {
+            throw new IndexOutOfBoundsException("offset and length are outside of the array");
+        }
+        isoTimeToArray( new AsciiSequence( bytes, offset, length ), result );
+    }
+
+    /**
+     * view of ASCII bytes as characters.
+     */
+    private static final class AsciiSequence implements CharSequence {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        AsciiSequence( byte[] bytes, int offset, int length ) {
+            this.bytes= bytes;
+            this.offset= offset;
+            this.length= length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt( int index ) {
+            return (char)( bytes[offset+index] & 0xFF );
+        }
+
+        @Override
+        public CharSequence subSequence( int start, int end ) {
+            return new AsciiSequence( bytes, offset+start, end-start );
+        }
+
+        @Override
+        public String toString() {
+            char[] cc= new char[length];
+            for ( int i=0; i<length; i++ ) cc[i]= charAt(i);
+            return new String(cc);
+        }
+    }
+
+    /**
+     * parse the digits from start to end, which must all be digits.
+     * @param s the characters
+     * @param start index of the first digit
+     * @param end index following the last digit
+     * @return the integer
+     */
+    private static int parseInteger( CharSequence s, int start, int end ) {
+        int result= 0;
+        for ( int i=start; i<end; i++ ) {
+            int d= s.charAt(i) - '0';
+            if ( d<0 || d>9 ) {
+                throw new IllegalArgumentException("only digits are allowed in string");
             }
-            String timehms;
-            // first, parse YMD part, and leave remaining components in time.
-            if ( time.length()==7 ) {
-                if ( time.charAt(4)=='W' ) { // 2022W08
-                    int year= parseInteger(time.substring(0, 4));
-                    int week= parseInteger(time.substring(5));
-                    result= new int[] { year, 0, 0, 0, 0, 0, 0 };
-                    fromWeekOfYear( year, week, result );
-                    timehms= "";
-                } else {
-                    result = new int[]{ parseInteger(time.substring(0, 4)), parseInteger(time.substring(5, 7)), 1, // days
-                        0, 0, 0, 0 };
-                    timehms = "";
-                }
-            } else if (time.length() == 8) {
-                if ( time.charAt(5)=='W' ) { // 2022-W08
-                    int year= parseInteger(time.substring(0, 4));
-                    int week= parseInteger(time.substring(6));
-                    result= new int[] { year, 0, 0, 0, 0, 0, 0 };
-                    fromWeekOfYear( year, week, result );
-                    timehms= "";
-                } else {
-                    result = new int[]{parseInteger(time.substring(0, 4)), 1, parseInteger(time.substring(5, 8)), // days
-                        0, 0, 0, 0};
-                    timehms = "";
-                }
-            } else if (time.charAt(8) == 'T') {
-                if ( Character.isDigit(time.charAt(4)) ) {
-                    result = new int[]{
-                        parseInteger(time.substring(0, 4)), parseInteger(time.substring(4,6)), parseInteger(time.substring(6,8)), 
-                        0, 0, 0, 0};
-                    timehms = time.substring(9);
-                } else {
-                    result = new int[]{parseInteger(time.substring(0, 4)), 1, parseInteger(time.substring(5, 8)), // days
-                        0, 0, 0, 0};
-                    timehms = time.substring(9);
-                }
-            } else if (time.charAt(8) == 'Z') {
-                result = new int[]{parseInteger(time.substring(0, 4)), 1, parseInteger(time.substring(5, 8)), // days
-                    0, 0, 0, 0};
-                timehms = time.substring(9);
+            result= 10 * result + d;
+        }
+        return result;
+    }
+
+    /**
+     * scan the ISO8601 time in one pass, without creating strings.  The forms
+     * accepted are those of isoTimeToArray, other than now and last.  Digits
+     * of the fraction of the second beyond nanoseconds are ignored.
+     * @param s the characters containing the time
+     * @param offset index of the first character of the time
+     * @param length number of characters in the time
+     * @param result the seven-element array to receive the time.
+     */
+    private static void scanIsoTime( CharSequence s, int offset, int length, int[] result ) {
+        if ( length<7 && length!=4 ) {
+            throw new IllegalArgumentException("time must have 4 or greater than 7 characters");
+        }
+        int end= offset+length;
+        int year= parseInteger( s, offset, offset+4 );
+        if ( length==4 ) {
+            result[0]= year;
+            result[1]= 1;
+            result[2]= 1;
+            result[3]= 0;
+            result[4]= 0;
+            result[5]= 0;
+            result[6]= 0;
+            return;
+        }
+        char c4= s.charAt(offset+4);
+        char c5= s.charAt(offset+5);
+        if ( Character.isDigit(c4) && Character.isDigit(c5) ) {
+            throw new IllegalArgumentException("date and time must contain delimiters between fields");
+        }
+        result[0]= year;
+        result[3]= 0;
+        result[4]= 0;
+        result[5]= 0;
+        result[6]= 0;
+        int hms; // the index of the hours, minutes and seconds.
+        // first, parse YMD part.
+        if ( length==7 ) {
+            if ( c4=='W' ) { // 2022W08
+                int week= parseInteger( s, offset+5, offset+7 );
+                result[1]= 0;
+                result[2]= 0;
+                fromWeekOfYear( year, week, result );
             } else {
-                result = new int[]{
-                    parseInteger(time.substring(0, 4)), parseInteger(time.substring(5, 7)), parseInteger(time.substring(8, 10)), 0, 0, 0, 0};
-                if (time.length() == 10) {
-                    timehms = "";
-                } else {
-                    timehms = time.substring(11);
-                }
+                result[1]= parseInteger( s, offset+5, offset+7 );
+                result[2]= 1;
             }
-            // second, parse HMS part.
-            if (timehms.endsWith("Z")) {
-                timehms = timehms.substring(0, timehms.length() - 1);
-            }
-            if (timehms.length() >= 2) {
-                result[3] = parseInteger(timehms.substring(0, 2));
-            }
-            if (timehms.length() >= 5) {
-                result[4] = parseInteger(timehms.substring(3, 5));
+            hms= end;
+        } else if ( length==8 ) {
+            if ( c5=='W' ) { // 2022-W08
+                int week= parseInteger( s, offset+6, offset+8 );
+                result[1]= 0;
+                result[2]= 0;
+                fromWeekOfYear( year, week, result );
+            } else {
+                result[1]= 1;
+                result[2]= parseInteger( s, offset+5, offset+8 ); // days
             }
-            if (timehms.length() >= 8) {
-                result[5] = parseInteger(timehms.substring(6, 8));
+            hms= end;
+        } else {
+            char c8= s.charAt(offset+8);
+            if ( c8=='T' && Character.isDigit(c4) ) {
+                result[1]= parseInteger( s, offset+4, offset+6 );
+                result[2]= parseInteger( s, offset+6, offset+8 );
+                hms= offset+9;
+            } else if ( c8=='T' || c8=='Z' ) {
+                result[1]= 1;
+                result[2]= parseInteger( s, offset+5, offset+8 ); // days
+                hms= offset+9;
+            } else {
+                if ( length<10 ) {
+                    throw new IllegalArgumentException("time must have 4, 7, 8, or 10 or more characters");
+                }
+                result[1]= parseInteger( s, offset+5, offset+7 );
+                result[2]= parseInteger( s, offset+8, offset+10 );
+                hms= length==10 ? end : offset+11;
             }
-            if (timehms.length() > 9) {
-                result[6] = (int) (Math.pow(10, 18 - timehms.length())) * parseInteger(timehms.substring(9));
+        }
+        // second, parse HMS part.
+        if ( end>hms && s.charAt(end-1)=='Z' ) {
+            end--;
+        }
+        int n= end-hms;
+        if ( n>=2 ) {
+            result[3]= parseInteger( s, hms, hms+2 );
+        }
+        if ( n>=5 ) {
+            result[4]= parseInteger( s, hms+3, hms+5 );
+        }
+        if ( n>=8 ) {
+            result[5]= parseInteger( s, hms+6, hms+8 );
+        }
+        if ( n>9 ) {
+            int ndigits= Math.min( n-9, 9 );
+            int nanos= parseInteger( s, hms+9, hms+9+ndigits );
+            parseInteger( s, hms+9+ndigits, end ); // check the digits which are ignored.
+            for ( int i=ndigits; i<9; i++ ) {
+                nanos*= 10;
             }
-            normalizeTime(result);
+            result[6]= nanos;
         }
-        return result;
+        normalizeTime(result);
     }
 
     /**
@@ -1144,90 +1275,45 @@ public class TimeUtil {
      * <li>handle negative components by borrowing from the next significant.
      * </ul>
      * Note that [Y,1,dayOfYear,...] is accepted, but the result will be Y,m,d.
+     * Carries and borrows of any size are made with division, and days are
+     * counted using the Julian day, so this takes the same time for an offset
+     * of one second as for one of a hundred years.  Only the first seven
+     * elements of the array are used.
      * @param time the seven-component time Y,m,d,H,M,S,nanoseconds
      */
     public static void normalizeTime(int[] time) {
-        while ( time[6]>=1000000000 ) {
-            time[5] += 1;
-            time[6] -= 1000000000;
-        }
-        while ( time[5]>59 ) { // TODO: leap seconds?
-            time[4]+= 1;
-            time[5]-= 60;
-        }
-        while ( time[4]>59 ) {
-            time[3]+= 1;
-            time[4]-= 60;
-        }        
-        while (time[3] >= 24) {
-            time[2] += 1;
-            time[3] -= 24;
-        }
-        if (time[6] < 0) {
-            time[5] -= 1;
-            time[6] += 1000000000;
-        }
-        if (time[5] < 0) {
-            time[4] -= 1; // take a minute
-            time[5] += 60; // add 60 seconds.
-        }
-        if (time[4] < 0) {
-            time[3] -= 1; // take an hour
-            time[4] += 60; // add 60 minutes
-        }
-        if (time[3] < 0) {
-            time[2] -= 1; // take a day
-            time[3] += 24; // add 24 hours
-        }
-        if (time[2] < 1) {
-            time[1] -= 1; // take a month
-            final int daysInMonth;
-            if ( time[1] == 0 ) { 
-                daysInMonth = 31;
-            } else {
-                if ( isLeapYear(time[0]) ) { // This was  TimeUtil.DAYS_IN_MONTH[isLeapYear(time[0]) ? 1 : 0][time[1]] . TODO: review!
-                    daysInMonth = TimeUtil.DAYS_IN_MONTH[1][time[1]];
+        if ( time[6]<0 || time[6]>=1000000000 ) {
+            time[5]+= Math.floorDiv( time[6], 1000000000 );
+            time[6]= Math.floorMod( time[6], 1000000000 );
+        }
+        if ( time[5]<0 || time[5]>59 ) { // TODO: leap seconds?
+            time[4]+= Math.floorDiv( time[5], 60 );
+            time[5]= Math.floorMod( time[5], 60 );
+        }
+        if ( time[4]<0 || time[4]>59 ) {
+            time[3]+= Math.floorDiv( time[4], 60 );
+            time[4]= Math.floorMod( time[4], 60 );
+        }
+        if ( time[3]<0 || time[3]>23 ) {
+            time[2]+= Math.floorDiv( time[3], 24 );
+            time[3]= Math.floorMod( time[3], 24 );
+        }
+        if ( time[1]<1 || time[1]>12 ) {
+            time[0]+= Math.floorDiv( time[1]-1, 12 );
+            time[1]= Math.floorMod( time[1]-1, 12 ) + 1;
+        }
+        if ( time[2]<1 || time[2]>28 ) {
+            int leap= ( time[0] % 4 == 0 && ( time[0] % 100 != 0 || time[0] % 400 == 0 ) ) ? 1 : 0;
+            if ( time[2]>DAYS_IN_MONTH[leap][time[1]] || time[2]<1 ) {
+                int doy= DAY_OFFSET[leap][time[1]] + time[2];
+                if ( doy>=1 && doy<=365+leap ) {
+                    time[1]= DOY_MONTH[leap][doy];
+                    time[2]= DOY_DAY[leap][doy];
                 } else {
-                    daysInMonth = TimeUtil.DAYS_IN_MONTH[0][time[1]];
+                    // count the days from the first of the month, which handles any number of days.
+                    fromJulianDay( julianDay( time[0], time[1], 1 ) + time[2] - 1, time );
                 }
             }
-            time[2] += daysInMonth; // add 24 hours
-        }
-        if (time[1] < 1) {
-            time[0] -= 1; // take a year
-            time[1] += 12; // add 12 months
-        }
-        if (time[3] > 24) {
-            throw new IllegalArgumentException("time[3] is greater than 24 (hours)");
-        }
-        if (time[1] > 12) {
-            time[0] += 1;
-            time[1] -= 12;
-        }
-        if (time[1] == 12 && time[2]>31 && time[2]<62 ) {
-            time[0] += 1;
-            time[1] = 1;
-            time[2] -= 31;
-            return;
-        }
-        int leap = isLeapYear(time[0]) ? 1 : 0;
-        if (time[2] == 0) { //TODO: tests don't hit this branch, and I'm not sure it can occur.
-            time[1] -= 1;
-            if (time[1] == 0) {
-                time[0] -= 1;
-                time[1] = 12;
-            }
-            time[2] = TimeUtil.DAYS_IN_MONTH[leap][time[1]];
-        }
-        int d = TimeUtil.DAYS_IN_MONTH[leap][time[1]];
-        while (time[2] > d) {
-            time[1] += 1;
-            time[2] -= d;
-            if ( time[1]>12 ) {
-                time[0]+=1;
-                time[1]-=12;
-            }
-            d = TimeUtil.DAYS_IN_MONTH[leap][time[1]];
         }
     }
     
@@ -1235,7 +1321,7 @@ public class TimeUtil {
      * return the julianDay for the year month and day. This was verified
      * against another calculation (julianDayWP, commented out above) from
      * http://en.wikipedia.org/wiki/Julian_day. Both calculations have 20
-     * operations.
+     * operations, which is faster than looking up the year in a table.
      *
      * @param year calendar year greater than 1582.
      * @param month the month number 1 through 12.
@@ -1256,7 +1342,8 @@ public class TimeUtil {
     /**
      * Break the Julian day apart into month, day year. This is based on
      * http://en.wikipedia.org/wiki/Julian_day (GNU Public License), and was
-     * introduced when toTimeStruct failed when the year was 1886.
+     * introduced when toTimeStruct failed when the year was 1886.  For 
+     * years 1583 through 9000 the year, month and day are looked up in tables.
      *
      * @see #julianDay( int year, int mon, int day )
      * @param julian the (integer) number of days that have elapsed since the
@@ -1264,6 +1351,156 @@ public class TimeUtil {
      * @return a TimeStruct with the month, day and year fields set.
      */
     public static int[] fromJulianDay(int julian) {
+        int[] result = new int[TIME_DIGITS];
+        fromJulianDay( julian, result );
+        return result;
+    }
+
+    /**
+     * Break the Julian day apart into year, month and day, without creating
+     * an array.  Only the first three components of the time are set.
+     * @param julian the Julian day
+     * @param time array to receive the year, month and day.
+     * @see #fromJulianDay(int) 
+     */
+    public static void fromJulianDay(int julian, int[] time) {
+        int i= julian - YEAR_START_JULIAN[0];
+        int nyears= YEAR_START_JULIAN.length-1;
+        if ( i>=0 && julian<YEAR_START_JULIAN[nyears] ) {
+            int iy= Math.min( (int)( i * 400L / 146097 ), nyears-1 ); // within a year
+            while ( YEAR_START_JULIAN[iy+1]<=julian ) iy++;
+            while ( YEAR_START_JULIAN[iy]>julian ) iy--;
+            int jan1= YEAR_START_JULIAN[iy];
+            int leap= YEAR_START_JULIAN[iy+1] - jan1 - 365;
+            int doy= julian - jan1 + 1;
+            time[0] = TABLE_FIRST_YEAR + iy;
+            time[1] = DOY_MONTH[leap][doy];
+            time[2] = DOY_DAY[leap][doy];
+        } else {
+            int[] result= fromJulianDayFormula( julian );
+            time[0] = result[0];
+            time[1] = result[1];
+            time[2] = result[2];
+        }
+    }
+
+    /**
+     * the number of nanoseconds in a day, ignoring leap seconds.
+     */
+    public static final long NANOSECONDS_PER_DAY = 86400000000000L;
+
+    private static final int J2000_JULIAN_DAY = 2451545;
+
+    /**
+     * the number of days either side of 2000-01-01 which can be packed.
+     */
+    private static final long PACKED_MAX_DAYS = Long.MAX_VALUE / NANOSECONDS_PER_DAY - 1;
+
+    /**
+     * return the time packed into a long, which is the number of days since
+     * 2000-01-01 times NANOSECONDS_PER_DAY, plus the nanoseconds since
+     * midnight.  Packed times can be compared, subtracted and stored as
+     * longs, without arrays.  Times from about 1708 to 2292 can be packed.
+     * <p>
+     * Leap seconds are not counted, so each day has exactly 
+     * NANOSECONDS_PER_DAY, and 23:59:60 is packed the same as 00:00:00 of
+     * the next day.  The hours, minutes, seconds and nanoseconds need not be
+     * normalized, and are carried into the days.
+     * </p>
+     * @param time seven-component time, which is not modified.
+     * @return the packed time.
+     * @throws IllegalArgumentException when the month is not 1 to 12, or the time is outside the range.
+     * @see #fromPackedTime(long, int[]) 
+     */
+    public static long toPackedTime( int[] time ) {
+        if ( time[1]<1 || time[1]>12 ) {
+            throw new IllegalArgumentException("month must be between 1 and 12: "+time[1]);
+        }
+        long days= julianDay( time[0], time[1], time[2] ) - J2000_JULIAN_DAY;
+        if ( days<-PACKED_MAX_DAYS || days>PACKED_MAX_DAYS ) {
+            throw new IllegalArgumentException("time is outside the range which can be packed: "+time[0]);
+        }
+        try {
+            // unnormalized hours or seconds can be large enough to overflow.
+            long nanos= Math.addExact( Math.multiplyExact( ( time[3] * 60L + time[4] ) * 60L + time[5], 1000000000L ), time[6] );
+            return Math.addExact( days * NANOSECONDS_PER_DAY, nanos );
+        } catch ( ArithmeticException ex ) {
+            throw new IllegalArgumentException("time is outside the range which can be packed: "+Arrays.toString(time));
+        }
+    }
+
+    /**
+     * unpack the time into the seven-component array.
+     * @param packed the packed time.
+     * @param time the array to receive the normalized time.
+     * @see #toPackedTime(int[]) 
+     */
+    public static void fromPackedTime( long packed, int[] time ) {
+        long days= Math.floorDiv( packed, NANOSECONDS_PER_DAY );
+        long nanos= Math.floorMod( packed, NANOSECONDS_PER_DAY );
+        fromJulianDay( (int)( days + J2000_JULIAN_DAY ), time );
+        long seconds= nanos / 1000000000L;
+        time[6]= (int)( nanos - seconds * 1000000000L );
+        time[5]= (int)( seconds % 60 );
+        time[4]= (int)( ( seconds / 60 ) % 60 );
+        time[3]= (int)( seconds / 3600 );
+    }
+
+    /**
+     * unpack the time.
+     * @param packed the packed time.
+     * @return the normalized seven-component time.
+     * @see #toPackedTime(int[]) 
+     */
+    public static int[] fromPackedTime( long packed ) {
+        int[] result= new int[TIME_DIGITS];
+        fromPackedTime( packed, result );
+        return result;
+    }
+
+    /**
+     * add the duration to the packed time.  When the duration has no years
+     * or months this is arithmetic on the long, and otherwise the time is
+     * unpacked so the months are added on the calendar.
+     * @param packed the packed time.
+     * @param duration the seven-component duration, such as [0,0,1,0,0,0,0] for one day.
+     * @return the packed time.
+     * @throws IllegalArgumentException when the result is outside the range which can be packed.
+     */
+    public static long addToPackedTime( long packed, int[] duration ) {
+        if ( duration[0]==0 && duration[1]==0 ) {
+            try {
+                long nanos= Math.addExact( Math.multiplyExact( 
+                    ( ( duration[2] * 24L + duration[3] ) * 60L + duration[4] ) * 60L + duration[5], 1000000000L ), duration[6] );
+                return Math.addExact( packed, nanos );
+            } catch ( ArithmeticException ex ) {
+                throw new IllegalArgumentException("time is outside the range which can be packed");
+            }
+        } else {
+            int[] time= fromPackedTime( packed );
+            for ( int i=0; i<TIME_DIGITS; i++ ) {
+                time[i]+= duration[i];
+            }
+            normalizeTime( time );
+            return toPackedTime( time );
+        }
+    }
+
+    /**
+     * return the number of nanoseconds from t2 to t1, ignoring leap seconds.
+     * @param t1 packed time
+     * @param t2 packed time
+     * @return the nanoseconds t1-t2, which is negative when t1 is before t2.
+     * @throws ArithmeticException when the difference is too large, over about 292 years.
+     */
+    public static long packedTimeDifference( long t1, long t2 ) {
+        return Math.subtractExact( t1, t2 );
+    }
+
+    /**
+     * the calculation of fromJulianDay, used outside the range of the tables.
+     */
+    static int[] fromJulianDayFormula(int julian) {
         int j = julian + 32044;
         int g = j / 146097;
         int dg = j % 146097;
@@ -1437,13 +1674,26 @@ public class TimeUtil {
      */
     public static int[] subtract(int[] base, int[] offset) {
         int[] result = new int[TIME_DIGITS];
+        subtract( base, offset, result );
+        return result;
+    }
+
+    /**
+     * subtract the offset from the base time, writing the result into dest
+     * rather than creating an array.  
+     *
+     * @param base a time
+     * @param offset offset in each component.
+     * @param dest the array to receive the time, which may be base or offset.
+     * @see #subtract(int[], int[]) 
+     */
+    public static void subtract(int[] base, int[] offset, int[] dest) {
         for (int i = 0; i < TIME_DIGITS; i++) {
-            result[i] = base[i] - offset[i];
+            dest[i] = base[i] - offset[i];
         }
-        if (result[0] > 400) {
-            normalizeTime(result);
+        if (dest[0] > 400) {
+            normalizeTime(dest);
         }
-        return result;
     }
 
     /**
@@ -1456,18 +1706,68 @@ public class TimeUtil {
      */
     public static int[] add(int[] base, int[] offset) {
         int[] result = new int[TIME_DIGITS];
+        add( base, offset, result );
+        return result;
+    }
+
+    /**
+     * add the offset to the base time, writing the result into dest rather
+     * than creating an array.
+     *
+     * @param base a time
+     * @param offset offset in each component.
+     * @param dest the array to receive the time, which may be base or offset.
+     * @see #add(int[], int[]) 
+     */
+    public static void add(int[] base, int[] offset, int[] dest) {
         for (int i = 0; i < TIME_DIGITS; i++) {
-            result[i] = base[i] + offset[i];
+            dest[i] = base[i] + offset[i];
         }
-        normalizeTime(result);
-        return result;
+        normalizeTime(dest);
+    }
+
+    /**
+     * true if the time is already normalized, so normalizeTime would not change it.
+     */
+    private static boolean isNormalized( int[] t ) {
+        if ( t[1]<1 || t[1]>12 || t[2]<1 ) return false;
+        if ( t[2]>28 && t[2]>daysInMonth( t[0], t[1] ) ) return false;
+        return t[3]>=0 && t[3]<24 && t[4]>=0 && t[4]<60 && t[5]>=0 && t[5]<60 
+            && t[6]>=0 && t[6]<1000000000;
+    }
+
+    /**
+     * compare two times, without modifying them as gt and eq do.  Times
+     * which are not normalized are copied and normalized before comparing.
+     * @param t1 seven-component time
+     * @param t2 seven-component time
+     * @return negative, zero or positive when t1 is before, equal to or after t2.
+     * @see #gt(int[], int[]) 
+     */
+    public static int compare( int[] t1, int[] t2 ) {
+        if ( !isNormalized(t1) ) {
+            t1= Arrays.copyOf( t1, TIME_DIGITS );
+            normalizeTime(t1);
+        }
+        if ( !isNormalized(t2) ) {
+            t2= Arrays.copyOf( t2, TIME_DIGITS );
+            normalizeTime(t2);
+        }
+        for ( int i=0; i<TIME_DIGITS; i++ ) {
+            if ( t1[i]!=t2[i] ) {
+                return t1[i]<t2[i] ? -1 : 1;
+            }
+        }
+        return 0;
     }
     
     /**
-     * true if t1 is after t2.
+     * true if t1 is after t2.  Both times are normalized, so the arrays 
+     * may be modified; use compare to leave them unchanged.
      * @param t1 seven-component time
      * @param t2 seven-component time
      * @return true if t1 is after t2.
+     * @see #compare(int[], int[]) 
      */
     public static boolean gt( int[] t1, int[] t2 ) {
         TimeUtil.normalizeTime(t1);
@@ -1483,10 +1783,12 @@ public class TimeUtil {
     }
     
     /**
-     * true if t1 is equal to t2.
+     * true if t1 is equal to t2.  Both times are normalized, so the arrays 
+     * may be modified; use compare to leave them unchanged.
      * @param t1 seven-component time
      * @param t2 seven-component time
      * @return true if t1 is equal to t2.
+     * @see #compare(int[], int[]) 
      */
     public static boolean eq( int[] t1, int[] t2 ) {
         TimeUtil.normalizeTime(t1);
@@ -1566,10 +1868,46 @@ public class TimeUtil {
      */
     public static int[] nextRange( int[] timerange ) {
         int[] result= new int[TimeUtil.TIME_RANGE_DIGITS];
-        int[] width= new int[TimeUtil.TIME_DIGITS];
+        nextRange( timerange, result );
+        return result;
+    }
+
+    /**
+     * calculate the next interval, writing it into dest rather than creating 
+     * arrays, so that loops stepping through intervals create no garbage.
+     * This has the same restrictions as nextRange(int[]).
+     * @param timerange 14-component time interval.
+     * @param dest 14-component array for the next interval, which may be timerange.
+     * @see #nextRange(int[]) 
+     */
+    public static void nextRange( int[] timerange, int[] dest ) {
+        int year= timerange[COMPONENT_YEAR];
+        int month= timerange[COMPONENT_MONTH];
         for ( int i=0; i<TimeUtil.TIME_DIGITS; i++ ) {
-            width[ i ] = timerange[i+TimeUtil.TIME_DIGITS ] - timerange[i] ;
+            int stop= timerange[i+TimeUtil.TIME_DIGITS];
+            dest[i]= stop - timerange[i]; // the width is kept in the first half.
+            dest[i+TimeUtil.TIME_DIGITS]= stop;
         }
+        borrowWidth( dest, year, month );
+        for ( int i=0; i<TimeUtil.TIME_DIGITS; i++ ) {
+            dest[i]+= dest[i+TimeUtil.TIME_DIGITS];
+        }
+        normalizeTime( dest ); // only the first seven components are used.
+        for ( int i=0; i<TimeUtil.TIME_DIGITS; i++ ) {
+            int t= dest[i];
+            dest[i]= dest[i+TimeUtil.TIME_DIGITS];
+            dest[i+TimeUtil.TIME_DIGITS]= t;
+        }
+    }
+
+    /**
+     * borrow from larger components of the width in the first seven 
+     * components, so that they are not negative.
+     * @param width the difference between the stop and start times.
+     * @param year the year of the start time.
+     * @param month the month of the start time.
+     */
+    private static void borrowWidth( int[] width, int year, int month ) {
         if ( width[5]<0 ) {
             width[5]= width[5]+60;
             width[4]= width[4]-1;
@@ -1583,7 +1921,7 @@ public class TimeUtil {
             width[2]= width[2]-1;
         }
         if ( width[2]<0 ) {
-            int daysInMonth= TimeUtil.daysInMonth( timerange[COMPONENT_YEAR], timerange[COMPONENT_MONTH] );
+            int daysInMonth= TimeUtil.daysInMonth( year, month );
             width[2]= width[2]+daysInMonth;
             width[1]= width[1]-1;
         }
@@ -1591,10 +1929,6 @@ public class TimeUtil {
             width[1]= width[1]+12;
             width[0]= width[0]-1;
         }
-        // System.arraycopy( range, TimeUtil.TIME_DIGITS, result, 0, TimeUtil.TIME_DIGITS );
-        setStartTime( getStopTime(timerange), result ); // This creates an extra array, but let's not worry about that.
-        setStopTime( TimeUtil.add( getStopTime(timerange), width ), result );
-        return result;
     }
        
     /**
@@ -1609,34 +1943,30 @@ public class TimeUtil {
      */
     public static int[] previousRange( int[] timerange ) {
         int[] result= new int[TimeUtil.TIME_RANGE_DIGITS];
-        int[] width= new int[TimeUtil.TIME_DIGITS];
+        previousRange( timerange, result );
+        return result;
+    }
+
+    /**
+     * calculate the previous interval, writing it into dest rather than 
+     * creating arrays.  This has the same restrictions as previousRange(int[]).
+     * @param timerange 14-component time interval.
+     * @param dest 14-component array for the previous interval, which may be timerange.
+     * @see #previousRange(int[]) 
+     */
+    public static void previousRange( int[] timerange, int[] dest ) {
+        int year= timerange[COMPONENT_YEAR];
+        int month= timerange[COMPONENT_MONTH];
         for ( int i=0; i<TimeUtil.TIME_DIGITS; i++ ) {
-            width[ i ] = timerange[i+TimeUtil.TIME_DIGITS ] - timerange[i] ;
+            int start= timerange[i];
+            dest[i]= timerange[i+TimeUtil.TIME_DIGITS] - start; // the width is kept in the first half.
+            dest[i+TimeUtil.TIME_DIGITS]= start;
         }
-        if ( width[5]<0 ) {
-            width[5]= width[5]+60;
-            width[4]= width[4]-1;
-        }
-        if ( width[4]<0 ) {
-            width[4]= width[4]+60;
-            width[3]= width[3]-1;
-        }
-        if ( width[3]<0 ) {
-            width[3]= width[3]+24;
-            width[2]= width[2]-1;
-        }
-        if ( width[2]<0 ) {
-            int daysInMonth= TimeUtil.daysInMonth( timerange[COMPONENT_YEAR], timerange[COMPONENT_MONTH] );
-            width[2]= width[2]+daysInMonth;
-            width[1]= width[1]-1;
-        }
-        if ( width[1]<0 ) {
-            width[1]= width[1]+12;
-            width[0]= width[0]-1;
+        borrowWidth( dest, year, month );
+        for ( int i=0; i<TimeUtil.TIME_DIGITS; i++ ) {
+            dest[i]= dest[i+TimeUtil.TIME_DIGITS] - dest[i];
         }
-        setStopTime( getStartTime(timerange), result );
-        setStartTime( TimeUtil.subtract(getStartTime(timerange), width ), result ); // This creates an extra array, but let's not worry about that.
-        return result;
+        normalizeTime( dest ); // only the first seven components are used.
     }
             
     /**
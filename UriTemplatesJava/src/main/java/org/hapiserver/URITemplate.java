@@ -4,6 +4,10 @@ package org.hapiserver;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -14,9 +18,14 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * URITemplate implements a URI_Template, as described in 
@@ -109,6 +118,71 @@ public class URITemplate {
     
     FieldHandler[] handlerObjects;
 
+    /**
+     * one element for each field, containing the month names indexed by
+     * month number with the case applied for month name fields, or null.
+     */
+    String[][] monthNames;
+
+    /**
+     * one element for each field, the delta or span of numeric fields, or 1.
+     */
+    int[] deltas;
+
+    /**
+     * one element for each field, the div of numeric fields, or 1.
+     */
+    int[] divs;
+
+    /**
+     * one element for each field, the pad of numeric fields, one of PAD_ZERO, PAD_SPACE, PAD_UNDERSCORE, or PAD_NONE.
+     */
+    int[] pads;
+
+    private static final int PAD_ZERO= 0;
+    private static final int PAD_SPACE= 1;
+    private static final int PAD_UNDERSCORE= 2;
+    private static final int PAD_NONE= 3;
+
+    /**
+     * the Julian day of phasestart, or Integer.MIN_VALUE if there is no phasestart
+     * or the Julian day could not be computed.
+     */
+    private int phaseStartJulian= Integer.MIN_VALUE;
+
+    /**
+     * the digit (0-6) which the intervals step by, or -1 when the intervals
+     * do not have a fixed cadence.  See cadenceProblem.
+     */
+    private int cadenceDigit= -1;
+
+    /**
+     * the number of units of cadenceDigit in each interval.
+     */
+    private int cadenceMult= 0;
+
+    /**
+     * null, or the reason the template does not have a fixed cadence.
+     */
+    private String cadenceProblem= null;
+
+    /**
+     * the offset of the intervals, in units of cadenceDigit from 2000-01-01, modulo cadenceMult, or -1 if not yet known.
+     * This is found by the first thread which needs it, and is volatile so that other threads
+     * using the template, such as those of a parallel stream, never see half of the long.
+     */
+    private volatile long cadencePhase= -1;
+
+    /**
+     * the Julian day of 2000-01-01, the origin used to count intervals.
+     */
+    private static final int J2000= 2451545;
+
+    /**
+     * null, or the cache of formatted names.
+     */
+    private volatile FormatCache formatCache= null;
+
     /**
      * one element for each field, containing the offset to each field, or -1 if the offset is not determined.
      */
@@ -185,6 +259,11 @@ public class URITemplate {
      */
     private int[] phasestart;
     private int startLsd;
+
+    /**
+     * the time components set by qualifiers like $(j;Y=2020), as a bit mask with bit 0 for year.
+     */
+    private int qualifiedDigits= 0;
     
     private int twoDigitYearStart=1950;
     
@@ -1155,31 +1234,38 @@ public class URITemplate {
                         switch (name) {
                             case "Y":
                                 context[YEAR]= Integer.parseInt(val);
+                                qualifiedDigits|= 1<<YEAR;
                                 externalContext= Math.min( externalContext, 0 );
                                 break;
                             case "m":
                                 context[MONTH]= Integer.parseInt(val);
+                                qualifiedDigits|= 1<<MONTH;
                                 externalContext= Math.min( externalContext, 1 );
                                 break;
                             case "d":
                                 context[DAY]= Integer.parseInt(val);
+                                qualifiedDigits|= 1<<DAY;
                                 externalContext= Math.min( externalContext, 2 );
                                 break;
                             case "j":
                                 context[MONTH]= 1;
                                 context[DAY]= Integer.parseInt(val);
+                                qualifiedDigits|= 1<<MONTH | 1<<DAY;
                                 externalContext= Math.min( externalContext, 1 );
                                 break;
                             case "H":
                                 context[HOUR]= Integer.parseInt(val);
+                                qualifiedDigits|= 1<<HOUR;
                                 externalContext= Math.min( externalContext, 3 );
                                 break;
                             case "M":
                                 context[MINUTE]= Integer.parseInt(val);
+                                qualifiedDigits|= 1<<MINUTE;
                                 externalContext= Math.min( externalContext, 4 );
                                 break;
                             case "S":
                                 context[SECOND]= Integer.parseInt(val);
+                                qualifiedDigits|= 1<<SECOND;
                                 externalContext= Math.min( externalContext, 5 );
                                 break;
                             case "cadence":
@@ -1477,6 +1563,132 @@ public class URITemplate {
         this.delims = delim;
         this.regex = regex1.toString();
 
+        // resolve the qualifiers, so that formatting need not look them up.
+        this.monthNames= new String[ndigits][];
+        this.deltas= new int[ndigits];
+        this.divs= new int[ndigits];
+        this.pads= new int[ndigits];
+        for ( int i=1; i<ndigits; i++ ) {
+            deltas[i]= 1;
+            divs[i]= 1;
+            pads[i]= PAD_ZERO;
+            Map<String,String> qualm= qualifiersMaps[i];
+            if ( handlers[i]<10 && qualm!=null ) {
+                String ddelta= getArg( qualm, "delta", getArg( qualm, "span", null ) );
+                if ( ddelta!=null ) {
+                    deltas[i]= Integer.parseInt(ddelta);
+                }
+                String sdiv= getArg( qualm, "div", null );
+                if ( sdiv!=null ) {
+                    divs[i]= (int)Float.parseFloat(sdiv); // use parseFloat to support 1E6
+                }
+                String pad= getArg( qualm, "pad", null );
+                if ( "space".equals(pad) ) {
+                    pads[i]= PAD_SPACE;
+                } else if ( "underscore".equals(pad) ) {
+                    pads[i]= PAD_UNDERSCORE;
+                } else if ( "none".equals(pad) ) {
+                    pads[i]= PAD_NONE;
+                }
+            } else if ( handlers[i]==13 ) {
+                monthNames[i]= makeMonthNames( qualm );
+            }
+        }
+        if ( phasestart!=null ) {
+            try {
+                phaseStartJulian= TimeUtil.julianDay( phasestart[0], phasestart[1], phasestart[2] );
+            } catch ( IllegalArgumentException ex ) {
+                logger.log( Level.FINE, "phasestart Julian day cannot be computed", ex );
+            }
+        }
+        
+        this.cadenceProblem= findCadence();
+    }
+
+    /**
+     * return the Julian day of phasestart.
+     * @return the Julian day
+     * @throws IllegalArgumentException when the Julian day cannot be computed.
+     */
+    private int getPhaseStartJulian() {
+        if ( phaseStartJulian!=Integer.MIN_VALUE ) {
+            return phaseStartJulian;
+        } else {
+            return TimeUtil.julianDay( phasestart[0], phasestart[1], phasestart[2] );
+        }
+    }
+
+    /**
+     * return the twelve month names, with the case and format qualifiers applied.
+     * @param qualm the qualifiers of the field, or null.
+     * @return array of thirteen names, with months starting at index 1.
+     */
+    private static String[] makeMonthNames( Map<String,String> qualm ) {
+        String cas= getArg( qualm, "case", null );
+        String fmt= getArg( qualm, "fmt", null );
+        String[] result= new String[13];
+        result[0]= "";
+        for ( int m=1; m<=12; m++ ) {
+            String ins;
+            if ( "full".equals(fmt) ) {
+                ins= TimeUtil.monthNameFull(m);
+            } else {
+                ins= TimeUtil.monthNameAbbrev(m);
+            }
+            if ( cas==null || cas.equals("lc") ) {
+                ins= ins.toLowerCase();
+            } else if ( cas.equals("uc") ) {
+                ins= ins.toUpperCase();
+            }
+            result[m]= ins;
+        }
+        return result;
+    }
+
+    private static final char[] DIGIT_TENS= new char[100];
+    private static final char[] DIGIT_ONES= new char[100];
+    static {
+        for ( int i=0; i<100; i++ ) {
+            DIGIT_TENS[i]= (char)( '0' + i/10 );
+            DIGIT_ONES[i]= (char)( '0' + i%10 );
+        }
+    }
+
+    /**
+     * append the number, padded with zeros to the length, as 
+     * String.format("%0"+length+"d",digit) would but without creating a 
+     * Formatter.  Negative numbers have the minus sign before the zeros, and
+     * numbers longer than the length are not truncated.
+     * @param result the buffer
+     * @param digit the number
+     * @param length the minimum number of characters.
+     */
+    static void appendZeroPadded( StringBuilder result, int digit, int length ) {
+        if ( digit<0 ) {
+            if ( digit==Integer.MIN_VALUE ) {
+                result.append( String.format( "%0"+length+"d", digit ) );
+                return;
+            }
+            result.append('-');
+            digit= -digit;
+            length--;
+        }
+        int n= 1;
+        for ( int p=10; n<10 && digit>=p; p*=10 ) n++;
+        for ( int i=n; i<length; i++ ) {
+            result.append('0');
+        }
+        int pos= result.length()+n;
+        result.setLength(pos);
+        while ( digit>=100 ) {
+            int q= digit / 100;
+            int r= digit - q*100;
+            result.setCharAt( --pos, DIGIT_ONES[r] );
+            result.setCharAt( --pos, DIGIT_TENS[r] );
+            digit= q;
+        }
+        result.setCharAt( --pos, DIGIT_ONES[digit] );
+        if ( digit>=10 ) result.setCharAt( --pos, DIGIT_TENS[digit] );
     }
     
     /**
@@ -1583,13 +1795,7 @@ public class URITemplate {
                 if (handlers[idigit] < 10) {
                     int digit;
                     digit= Integer.parseInt(field);
-                    if ( qual!=null ) {
-                        String s= getArg( qual, "div", null );
-                        if ( s!=null ) { 
-                            int div= (int)Float.parseFloat(s); // TODO: we really have to parse this each time?
-                            digit= digit*div;
-                        }
-                    }
+                    digit= digit*divs[idigit];
                     switch (handlers[idigit]) {
                         case 0:
                             time[YEAR] = digit;
@@ -1696,7 +1902,7 @@ public class URITemplate {
                 } else if ( timeWidth[0]>0 ) {
                     startTime[0]= ( ( startTime[0] - this.phasestart[0] ) / timeWidth[0] ) * timeWidth[0] + this.phasestart[0];
                 } else if ( timeWidth[2]>1 ) {
-                    int phaseStartJulian= TimeUtil.julianDay( phasestart[0], phasestart[1], phasestart[2] );
+                    int phaseStartJulian= getPhaseStartJulian();
                     int ndays= TimeUtil.julianDay( startTime[0], startTime[1], startTime[2] ) - phaseStartJulian;
                     int ncycles= floorDiv( ndays, timeWidth[2] );
                     startTime= TimeUtil.fromJulianDay( phaseStartJulian + ncycles * timeWidth[2] );
@@ -1773,7 +1979,626 @@ public class URITemplate {
     public void setContext( int[] externalContextTime ) {
         System.arraycopy(externalContextTime, 0, context, 0, externalContext);
     }
-    
+
+    /**
+     * return the literal text found before the first field, for example
+     * "/tmp/" for /tmp/$Y$m$d.dat.  Any name which can be parsed must start
+     * with this, so it can be used to quickly reject names.
+     * @return the literal prefix, possibly the empty string.
+     */
+    public String getLiteralPrefix() {
+        return delims[0];
+    }
+
+    /**
+     * return the literal text found after the last field, for example
+     * ".dat" for /tmp/$Y$m$d.dat.  Any name which can be parsed must end
+     * with this.
+     * @return the literal suffix, possibly the empty string.
+     */
+    public String getLiteralSuffix() {
+        return ndigits>1 ? delims[ndigits-1] : "";
+    }
+
+    /**
+     * return the literal text after the field.
+     * @param idigit the field index, from 0 for the literal prefix to getFieldCount()-1.
+     * @return the literal text, possibly the empty string.
+     */
+    String getLiteral( int idigit ) {
+        return delims[idigit];
+    }
+
+    /**
+     * return the position within names of the literal text after the field,
+     * when this and the earlier fields have fixed lengths.  For example, 
+     * the "_" in /tmp/$Y_$j_$v.dat is at position 9 in every name.
+     * @param idigit the field index, from 0 for the literal prefix to getFieldCount()-1.
+     * @return the position, or -1 if it depends on the name.
+     */
+    int getLiteralOffset( int idigit ) {
+        if ( idigit==0 ) return 0;
+        if ( offsets[idigit]==-1 || lengths[idigit]<1 ) return -1;
+        return offsets[idigit] + lengths[idigit];
+    }
+
+    /**
+     * return the length of every name which can be parsed, when all the
+     * fields have a fixed length.  For example /tmp/$Y$m$d.dat has the fixed
+     * length 17, while /tmp/$Y$m$d_$v.dat has no fixed length.
+     * @return the length, or -1 if the length is not fixed.
+     */
+    public int getFixedLength() {
+        int len= delims[0].length();
+        for ( int i=1; i<ndigits; i++ ) {
+            if ( lengths[i]<1 ) return -1;
+            len+= lengths[i] + delims[i].length();
+        }
+        return len;
+    }
+
+    /**
+     * return the reason the names cannot be updated in place by
+     * IncrementalFormatter, or null if each field is always formatted with
+     * the same number of characters at the same position.
+     * @return null, or the reason.
+     */
+    String getFixedLayoutProblem() {
+        if ( getFixedLength()==-1 ) return "the fields do not have fixed lengths";
+        if ( stopTimeDigit!=AFTERSTOP_INIT ) return "the stop time is in the template";
+        if ( startShift!=null || stopShift!=null ) return "the template has a shift";
+        if ( phasestart!=null ) return "the template has phasestart";
+        String suffix= delims[ndigits-1];
+        if ( ( delims[0].length()>0 && delims[0].charAt(0)<=' ' ) 
+            || ( suffix.length()>0 && suffix.charAt(suffix.length()-1)<=' ' ) ) {
+            return "the names are trimmed";
+        }
+        for ( int i=1; i<ndigits; i++ ) {
+            int h= handlers[i];
+            if ( h<10 ) {
+                if ( pads[i]!=PAD_ZERO ) return "the field $"+fc[i]+" is not padded with zeros";
+                if ( lengths[i]>9 ) return "the field $"+fc[i]+" is too long";
+            } else if ( h==13 ) {
+                for ( int m=1; m<=12; m++ ) {
+                    if ( monthNames[i][m].length()!=lengths[i] ) return "the month names have different lengths";
+                }
+            } else {
+                return "the field $"+fc[i]+" is formatted by a handler";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of fields, counting the literal prefix as field 0.
+     */
+    int getFieldCount() {
+        return ndigits;
+    }
+
+    /**
+     * return the position of the field within names, when getFixedLayoutProblem is null.
+     * @param idigit the field index, from 1 to getFieldCount()-1.
+     * @return the position.
+     */
+    int getFieldOffset( int idigit ) {
+        int pos= delims[0].length();
+        for ( int i=1; i<idigit; i++ ) {
+            pos+= lengths[i] + delims[i].length();
+        }
+        return pos;
+    }
+
+    /**
+     * return the time components the field depends on, as a bit mask with
+     * bit 0 for year through bit 6 for nanoseconds.
+     * @param idigit the field index, from 1 to getFieldCount()-1.
+     * @return the mask.
+     */
+    int getFieldDependencies( int idigit ) {
+        switch ( handlers[idigit] ) {
+            case 0: 
+            case 1: return 1<<YEAR;
+            case 2: return 1<<YEAR | 1<<MONTH | 1<<DAY;
+            case 3:
+            case 13: return 1<<MONTH;
+            case 4: return 1<<DAY;
+            case 5: return 1<<HOUR;
+            case 6: return 1<<MINUTE;
+            case 7: return 1<<SECOND;
+            default: return 1<<NANOSECOND;
+        }
+    }
+
+    /**
+     * write the field into the buffer at its position, when 
+     * getFixedLayoutProblem is null.
+     * @param idigit the field index, from 1 to getFieldCount()-1.
+     * @param time the seven-component start time.
+     * @param buf the buffer holding the name.
+     * @param pos the position of the field.
+     * @return false if the value does not fit within the field, and nothing was written.
+     */
+    boolean formatField( int idigit, int[] time, char[] buf, int pos ) {
+        int length= lengths[idigit];
+        if ( handlers[idigit]==13 ) {
+            monthNames[idigit][time[1]].getChars( 0, length, buf, pos );
+            return true;
+        }
+        int digit= fieldDigit( idigit, time ) / divs[idigit];
+        if ( digit<0 || digit>=POWERS_OF_TEN[length] ) return false;
+        for ( int k=pos+length-1; k>=pos; k-- ) {
+            buf[k]= (char)( '0' + digit % 10 );
+            digit= digit / 10;
+        }
+        return true;
+    }
+
+    /**
+     * the time digit of each of the handlers 0 through 9, such as DAY for $j.
+     */
+    private static final int[] HANDLER_DIGITS= new int[] { YEAR, YEAR, DAY, MONTH, DAY, HOUR, MINUTE, SECOND, 
+        NANOSECOND, NANOSECOND };
+
+    private static final int[] POWERS_OF_TEN= new int[] { 1, 10, 100, 1000, 10000, 100000, 1000000, 
+        10000000, 100000000, 1000000000 };
+
+    /**
+     * find the cadence of the intervals, setting cadenceDigit and cadenceMult.
+     * The intervals have a fixed cadence when each is the same number of
+     * units of one digit and they do not restart at a coarser boundary, as
+     * $(H;span=5) would each day.
+     * @return null, or the reason there is no fixed cadence.
+     */
+    private String findCadence() {
+        if ( stopTimeDigit!=AFTERSTOP_INIT ) return "the stop time is in the template";
+        if ( startShift!=null || stopShift!=null ) return "the template has a shift";
+        if ( externalContext>0 ) return "the year is not in the template";
+        if ( lsd<0 ) return "the template has no time fields";
+        for ( int i=1; i<ndigits; i++ ) {
+            int h= handlers[i];
+            if ( h==100 ) {
+                if ( !( fc[i].equals("v") || handlerObjects[i] instanceof IgnoreFieldHandler
+                    || handlerObjects[i] instanceof EnumFieldHandler ) ) {
+                    return "the field $"+fc[i]+" may modify the time";
+                }
+            } else if ( h==1 ) {
+                return "two-digit years repeat each century";
+            } else if ( h>=10 && h!=13 ) {
+                return "the field $"+fc[i]+" cannot be formatted";
+            }
+            if ( divs[i]!=1 ) return "the field $"+fc[i]+" has div";
+        }
+        int digit= -1;
+        for ( int j=0; j<NUM_TIME_DIGITS; j++ ) {
+            if ( timeWidth[j]!=0 ) {
+                if ( digit!=-1 ) return "the width "+TimeUtil.formatIso8601Duration(timeWidth)+" has more than one component";
+                digit= j;
+            }
+        }
+        if ( digit==-1 ) return "the width is zero";
+        int mult= timeWidth[digit];
+        if ( mult<1 ) return "the width is negative";
+        if ( phasestart!=null && digit!=DAY ) return "phasestart is only supported with days";
+        for ( int j=0; j<=digit; j++ ) {
+            if ( ( qualifiedDigits & 1<<j )!=0 ) return "a qualifier sets $"+"YmdHMS".charAt(j)+", which does not step with the intervals";
+        }
+        for ( int i=1; i<ndigits; i++ ) {
+            // formatting keeps these fields from the start time rather than the interval, as $d does in $Y$(m;span=6)$d.
+            int h= handlers[i];
+            if ( h<10 || h==13 ) {
+                if ( HANDLER_DIGITS[ h==13 ? 3 : h ]>digit ) return "the field $"+fc[i]+" is finer than the width";
+            }
+        }
+        switch ( digit ) {
+            case YEAR:
+                break;
+            case MONTH:
+                if ( 12 % mult != 0 ) return "months restart each year";
+                break;
+            case DAY:
+                if ( mult>1 ) {
+                    if ( phasestart==null ) return "days restart each year without phasestart";
+                    for ( int i=1; i<ndigits; i++ ) {
+                        if ( handlers[i]!=4 && handlers[i]<10 && deltas[i]>1 ) return "$"+fc[i]+" with delta restarts each year";
+                    }
+                }
+                break;
+            case HOUR:
+                if ( 24 % mult != 0 ) return "hours restart each day";
+                break;
+            case MINUTE:
+            case SECOND:
+                if ( 60 % mult != 0 ) return "the field restarts each "+( digit==MINUTE ? "hour" : "minute" );
+                break;
+            default:
+                if ( 1000000000 % mult != 0 ) return "nanoseconds restart each second";
+                break;
+        }
+        this.cadenceDigit= digit;
+        this.cadenceMult= mult;
+        return null;
+    }
+
+    /**
+     * return the number of cadence units from 2000-01-01 to the start of the 
+     * unit containing the time.
+     * @param t normalized seven-component time
+     * @return the number of units
+     */
+    private long toUnits( int[] t ) {
+        switch ( cadenceDigit ) {
+            case YEAR:
+                return t[0];
+            case MONTH:
+                return t[0]*12L + t[1] - 1;
+            default:
+                long u= TimeUtil.julianDay( t[0], t[1], t[2] ) - J2000;
+                if ( cadenceDigit>=HOUR ) u= u*24 + t[3];
+                if ( cadenceDigit>=MINUTE ) u= u*60 + t[4];
+                if ( cadenceDigit>=SECOND ) u= u*60 + t[5];
+                if ( cadenceDigit>=NANOSECOND ) u= u*1000000000L + t[6];
+                return u;
+        }
+    }
+
+    /**
+     * return the time at the start of the unit.
+     * @param u the number of cadence units from 2000-01-01
+     * @param t the array to receive the time
+     */
+    private void fromUnits( long u, int[] t ) {
+        Arrays.fill( t, 0 );
+        switch ( cadenceDigit ) {
+            case YEAR:
+                t[0]= (int)u;
+                t[1]= 1;
+                t[2]= 1;
+                return;
+            case MONTH:
+                t[0]= (int)Math.floorDiv( u, 12 );
+                t[1]= (int)Math.floorMod( u, 12 ) + 1;
+                t[2]= 1;
+                return;
+            default:
+                if ( cadenceDigit>=NANOSECOND ) {
+                    t[6]= (int)Math.floorMod( u, 1000000000L );
+                    u= Math.floorDiv( u, 1000000000L );
+                }
+                if ( cadenceDigit>=SECOND ) {
+                    t[5]= (int)Math.floorMod( u, 60 );
+                    u= Math.floorDiv( u, 60 );
+                }
+                if ( cadenceDigit>=MINUTE ) {
+                    t[4]= (int)Math.floorMod( u, 60 );
+                    u= Math.floorDiv( u, 60 );
+                }
+                if ( cadenceDigit>=HOUR ) {
+                    t[3]= (int)Math.floorMod( u, 24 );
+                    u= Math.floorDiv( u, 24 );
+                }
+                TimeUtil.fromJulianDay( (int)( u + J2000 ), t );
+        }
+    }
+
+    /**
+     * true if the time is at the start of a cadence unit.
+     */
+    private boolean isUnitBoundary( int[] t ) {
+        if ( cadenceDigit<DAY && t[2]!=1 ) return false;
+        if ( cadenceDigit<MONTH && t[1]!=1 ) return false;
+        for ( int j=Math.max( HOUR, cadenceDigit+1 ); j<NUM_TIME_DIGITS; j++ ) {
+            if ( t[j]!=0 ) return false;
+        }
+        return true;
+    }
+
+    /**
+     * throw an IllegalArgumentException if the template does not have a fixed cadence,
+     * and find the phase of the intervals if it is not known.
+     */
+    private void checkCadence() {
+        if ( cadenceProblem!=null ) {
+            throw new IllegalArgumentException("template does not have a fixed cadence because "+cadenceProblem+": "+spec);
+        }
+        if ( cadencePhase==-1 ) {
+            // format and parse one interval to find where the intervals start.
+            int[] t= new int[] { 2000, 1, 1, 0, 0, 0, 0 };
+            int[] tr;
+            try {
+                tr= parse( formatStartStop( t.clone(), t.clone(), new HashMap<>() ), new HashMap<>() );
+            } catch ( ParseException ex ) {
+                throw new IllegalArgumentException("template does not parse its own names: "+spec, ex);
+            }
+            long u0= toUnits( getStartTimeOf(tr) );
+            long u1= toUnits( getStopTimeOf(tr) );
+            if ( u1-u0!=cadenceMult || !isUnitBoundary( getStartTimeOf(tr) ) ) {
+                throw new IllegalArgumentException("template does not have a fixed cadence because the intervals are not "+
+                    cadenceMult+" units wide: "+spec );
+            }
+            cadencePhase= Math.floorMod( u0, cadenceMult );
+        }
+    }
+
+    private static int[] getStartTimeOf( int[] tr ) {
+        return Arrays.copyOfRange( tr, 0, NUM_TIME_DIGITS );
+    }
+
+    private static int[] getStopTimeOf( int[] tr ) {
+        return Arrays.copyOfRange( tr, NUM_TIME_DIGITS, 2*NUM_TIME_DIGITS );
+    }
+
+    /**
+     * return the index, counting from 2000-01-01, of the interval containing the time.
+     */
+    private long intervalIndex( int[] t ) {
+        return Math.floorDiv( toUnits(t) - cadencePhase, cadenceMult );
+    }
+
+    /**
+     * return true if the intervals have a fixed cadence, so that 
+     * countIntervals and formatInterval can be used.
+     * @return true if the intervals have a fixed cadence.
+     * @see #getCadenceProblem() 
+     */
+    public boolean hasFixedCadence() {
+        return cadenceProblem==null;
+    }
+
+    /**
+     * return the reason the intervals do not have a fixed cadence, such
+     * as "hours restart each day" for $Y$j$(H;span=5).
+     * @return the reason, or null if the intervals have a fixed cadence.
+     */
+    public String getCadenceProblem() {
+        return cadenceProblem;
+    }
+
+    /**
+     * return the number of names formatRange would return for the time range.
+     * This is computed directly, without formatting the names.
+     * @param timeRange fourteen-component time range
+     * @return the number of intervals which cover the time range.
+     * @throws IllegalArgumentException when the template does not have a fixed cadence, or the range is reversed.
+     * @see #hasFixedCadence() 
+     */
+    public long countIntervals( int[] timeRange ) {
+        checkCadence();
+        int[] start= getStartTimeOf(timeRange);
+        int[] stop= getStopTimeOf(timeRange);
+        TimeUtil.normalizeTime(start);
+        TimeUtil.normalizeTime(stop);
+        if ( TimeUtil.gt( start, stop ) ) {
+            throw new IllegalArgumentException("start time must be before or equal to stop time.");
+        }
+        if ( TimeUtil.eq( start, stop ) ) {
+            return 0;
+        }
+        long first= intervalIndex( start );
+        long ue= toUnits( stop ) - cadencePhase;
+        long last;
+        if ( isUnitBoundary( stop ) && Math.floorMod( ue, cadenceMult )==0 ) {
+            last= ue / cadenceMult - 1;
+        } else {
+            last= Math.floorDiv( ue, cadenceMult );
+        }
+        return last - first + 1;
+    }
+
+    /**
+     * return the time range of the n-th interval covering the time range,
+     * the range of the n-th name formatRange would return.
+     * @param timeRange fourteen-component time range
+     * @param n the index, from 0 to countIntervals(timeRange)-1.
+     * @return the fourteen-component time range of the interval.
+     * @throws IllegalArgumentException when the template does not have a fixed cadence, or n is out of range.
+     */
+    public int[] getInterval( int[] timeRange, long n ) {
+        long count= countIntervals( timeRange );
+        if ( n<0 || n>=count ) {
+            throw new IllegalArgumentException("interval index "+n+" is not between 0 and "+(count-1));
+        }
+        int[] start= getStartTimeOf(timeRange);
+        TimeUtil.normalizeTime(start);
+        return intervalRange( intervalIndex( start ) + n );
+    }
+
+    /**
+     * return the index, counting from the interval containing 2000-01-01,
+     * of the interval containing the time.
+     * @param t normalized seven-component time
+     * @return the index
+     * @throws IllegalArgumentException when the template does not have a fixed cadence.
+     */
+    long intervalIndexOf( int[] t ) {
+        checkCadence();
+        return intervalIndex( t );
+    }
+
+    /**
+     * set the time to the start of the interval with the index, counting from
+     * the interval containing 2000-01-01.  checkCadence must have been called.
+     * @param index the index
+     * @param t the seven-component array to receive the time
+     */
+    void intervalStart( long index, int[] t ) {
+        fromUnits( index * cadenceMult + cadencePhase, t );
+    }
+
+    /**
+     * return the time range of the interval with the index, counting from
+     * the interval containing 2000-01-01.  checkCadence must have been called.
+     * @param index the index
+     * @return the fourteen-component time range of the interval.
+     */
+    int[] intervalRange( long index ) {
+        long u= index * cadenceMult + cadencePhase;
+        int[] result= new int[2*NUM_TIME_DIGITS];
+        int[] t= new int[NUM_TIME_DIGITS];
+        fromUnits( u, t );
+        System.arraycopy( t, 0, result, 0, NUM_TIME_DIGITS );
+        fromUnits( u + cadenceMult, t );
+        System.arraycopy( t, 0, result, NUM_TIME_DIGITS, NUM_TIME_DIGITS );
+        return result;
+    }
+
+    /**
+     * return the n-th name formatRange would return for the time range.
+     * This is computed directly, without formatting the names before it.
+     * @param timeRange fourteen-component time range
+     * @param n the index, from 0 to countIntervals(timeRange)-1.
+     * @return the formatted name.
+     * @throws IllegalArgumentException when the template does not have a fixed cadence, or n is out of range.
+     */
+    public String formatInterval( int[] timeRange, long n ) {
+        return formatInterval( timeRange, n, Collections.emptyMap() );
+    }
+
+    /**
+     * return the n-th name formatRange would return for the time range.
+     * This is computed directly, without formatting the names before it.
+     * @param timeRange fourteen-component time range
+     * @param n the index, from 0 to countIntervals(timeRange)-1.
+     * @param extra extra parameters
+     * @return the formatted name.
+     * @throws IllegalArgumentException when the template does not have a fixed cadence, or n is out of range.
+     */
+    public String formatInterval( int[] timeRange, long n, Map<String,String> extra ) {
+        int[] tr= getInterval( timeRange, n );
+        return formatStartStop( getStartTimeOf(tr), getStopTimeOf(tr), extra );
+    }
+
+    /**
+     * return the time range of one of n contiguous shards of the time range,
+     * for dividing work among n workers.  The intervals covering the time
+     * range are divided so that the shards have the same number of intervals,
+     * or one more for the first shards, and each shard begins and ends on
+     * interval boundaries.  Formatting the names of each shard's time range
+     * gives, in turn, the names formatRange would return for the whole range.
+     * Only arithmetic is used, so each worker finds its own shard without
+     * formatting the others, and every worker gets the same result.
+     * @param timeRange fourteen-component time range
+     * @param i the shard, from 0 to n-1.
+     * @param n the number of shards.
+     * @return the fourteen-component time range of the shard, which has the same start and stop when the shard is empty.
+     * @throws IllegalArgumentException when the template does not have a fixed cadence, or i or n are out of range.
+     * @see #hasFixedCadence() 
+     */
+    public int[] shard( int[] timeRange, int i, int n ) {
+        if ( n<1 ) throw new IllegalArgumentException("number of shards must be at least 1: "+n);
+        if ( i<0 || i>=n ) throw new IllegalArgumentException("shard "+i+" is not between 0 and "+(n-1));
+        long count= countIntervals( timeRange );
+        int[] start= getStartTimeOf(timeRange);
+        TimeUtil.normalizeTime(start);
+        long first= intervalIndex( start );
+        long base= count / n;
+        long rem= count % n;
+        long s= first + i*base + Math.min( i, rem );
+        long e= s + base + ( i<rem ? 1 : 0 );
+        int[] result= new int[2*NUM_TIME_DIGITS];
+        int[] t= new int[NUM_TIME_DIGITS];
+        intervalStart( s, t );
+        System.arraycopy( t, 0, result, 0, NUM_TIME_DIGITS );
+        intervalStart( e, t );
+        System.arraycopy( t, 0, result, NUM_TIME_DIGITS, NUM_TIME_DIGITS );
+        return result;
+    }
+
+    /**
+     * return a stream of the names formatRange would return for the time range.
+     * @param timeRange fourteen-component time range
+     * @return the stream of names
+     * @see #stream(int[], java.util.Map) 
+     */
+    public Stream<String> stream( int[] timeRange ) {
+        return stream( timeRange, Collections.emptyMap() );
+    }
+
+    /**
+     * return a stream of the names formatRange would return for the time
+     * range.  When the template has a fixed cadence, the stream is SIZED and
+     * splits the time range at interval boundaries, each part formatting
+     * its own intervals, so that a parallel stream uses all the cores.
+     * Otherwise, or when the intervals cannot be counted, such as when a 
+     * field is only formatted with the extra parameters, names are found in
+     * sequence as IntervalCursor does, and parallel streams take them in batches.
+     * @param timeRange fourteen-component time range
+     * @param extra extra parameters
+     * @return the stream of names
+     * @see #hasFixedCadence() 
+     */
+    public Stream<String> stream( int[] timeRange, final Map<String,String> extra ) {
+        if ( hasFixedCadence() ) {
+            try {
+                long count= countIntervals( timeRange );
+                int[] start= getStartTimeOf(timeRange);
+                TimeUtil.normalizeTime(start);
+                long first= intervalIndex( start );
+                return StreamSupport.stream( new IntervalSpliterator( this, first, first+count, extra ), false );
+            } catch ( IllegalArgumentException ex ) {
+                // the phase could not be found, for example when a field needs extra parameters.
+                logger.log( Level.FINE, "names are found in sequence: {0}", ex.getMessage() );
+            }
+        }
+        final IntervalCursor cursor= new IntervalCursor( this, getStartTimeOf(timeRange), getStopTimeOf(timeRange), extra );
+        Spliterator<String> spliterator= new Spliterators.AbstractSpliterator<String>( Long.MAX_VALUE, 
+            Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE ) {
+            @Override
+            public boolean tryAdvance( Consumer<? super String> action ) {
+                if ( !cursor.hasNext() ) return false;
+                try {
+                    action.accept( cursor.next() );
+                } catch ( ParseException ex ) {
+                    throw new IllegalArgumentException( ex );
+                }
+                return true;
+            }
+        };
+        return StreamSupport.stream( spliterator, false );
+    }
+
+    /**
+     * return a key which is the same for any two templates which step
+     * through the same sequence of intervals in formatRange, so that the
+     * intervals can be computed once and shared.  For example,
+     * /data/$Y/$Y$m$d.cdf and $Y$j.dat have the same key.  Templates which
+     * have stop time fields, shifts, div, two-digit years, no year, or
+     * field handlers which modify the time return null, since their intervals
+     * are not described by the cadence alone.
+     * @return the key, or null if the intervals must be found for this template.
+     */
+    String getCadenceKey() {
+        if ( stopTimeDigit!=AFTERSTOP_INIT || startShift!=null || stopShift!=null || externalContext>0 || lsd<0 ) {
+            return null;
+        }
+        StringBuilder key= new StringBuilder();
+        key.append( Arrays.toString(timeWidth) ).append(timeWidthIsExplicit ? "E" : "" ).append(":").append(lsd);
+        if ( phasestart!=null ) {
+            key.append(":").append( Arrays.toString(phasestart) );
+        }
+        for ( int i=1; i<ndigits; i++ ) {
+            int h= handlers[i];
+            if ( h==100 ) {
+                if ( !( fc[i].equals("v") || handlerObjects[i] instanceof IgnoreFieldHandler
+                    || handlerObjects[i] instanceof EnumFieldHandler ) ) {
+                    return null;
+                }
+            } else if ( h==1 || h>=10 && h!=13 ) {
+                return null;
+            }
+            if ( h<10 ) {
+                if ( qualifiersMaps[i]!=null && qualifiersMaps[i].containsKey("div") ) return null;
+                if ( deltas[i]!=1 ) {
+                    key.append(":").append(fc[i]).append(deltas[i]);
+                }
+            }
+        }
+        if ( startTimeOnly!=0 ) {
+            key.append(":").append(startTimeOnly);
+        }
+        return key.toString();
+    }
+
     /**
      * For convenience, add API to match that suggested by 
      * https://github.com/hapi-server/uri-templates/blob/master/formatting.json .
@@ -1794,62 +2619,61 @@ public class URITemplate {
      * https://github.com/hapi-server/uri-templates/blob/master/formatting.json,
      * and allowing for extra named fields to be passed in.
      * Note if start and end appear in the template, then just one formatted
-     * range is returned.  This works by formatting and parsing the time ranges,
-     * stepping through the sequence.
+     * range is returned.  When the template has a fixed cadence, the intervals
+     * are stepped numerically; otherwise this works by formatting and parsing 
+     * the time ranges, stepping through the sequence.  Either way the names are
+     * the same, and fields finer than the interval, like $d in $Y$(m;span=6)$d,
+     * are kept from the start time.
      * @param template the template
      * @param startTimeStr the beginning of the interval to cover
      * @param stopTimeStr the end of the interval to cover
      * @param extra extra named parameters
      * @return the formatted times which cover the span.
      * @throws ParseException when the initial parsing cannot be done.
+     * @see IntervalCursor which provides the names one at a time.
      */
     public static String[] formatRange( String template, 
             String startTimeStr, 
             String stopTimeStr, 
             Map<String,String> extra ) throws ParseException {        
         URITemplate ut= new URITemplate(template);
+        IntervalCursor cursor= new IntervalCursor( ut, startTimeStr, stopTimeStr, extra );
         ArrayList<String> result= new ArrayList<>();
-        String s1;
-        String sptr= TimeUtil.isoTimeFromArray( TimeUtil.isoTimeToArray(startTimeStr) );
-        int[] stopDigits= TimeUtil.isoTimeToArray(stopTimeStr);
-        String stop= TimeUtil.isoTimeFromArray( stopDigits );
-        if ( sptr.compareTo(stop)>0 ) {
-            throw new IllegalArgumentException("start time must be before or equal to stop time.");
-        }
-        int i=0;
-        int externalContext= ut.getExternalContext();
-        if ( externalContext>0 ) {
-            int[] context= new int[TimeUtil.TIME_DIGITS];
-            System.arraycopy(stopDigits, 0, context, 0, externalContext);
-            ut.setContext(context);
-        }
-        
-        boolean firstLoop= true;
-        while ( sptr.compareTo(stop)<0 ) {
-            String sptr0= sptr;
-            s1= ut.format( sptr, sptr, extra );
-            int [] tta= ut.parse( s1, new HashMap<>() );
-            if ( firstLoop ) {
-                sptr= TimeUtil.isoTimeFromArray( TimeUtil.getStartTime(tta) );
-                s1= ut.format( sptr, sptr, extra );
-                firstLoop= false;
-            }
-            //test for special case where start and stop are in the template, so there is no looping.
-            if ( Arrays.equals( TimeUtil.getStartTime(tta), TimeUtil.getStopTime(tta) ) ) {
-                result.add( ut.format( startTimeStr, stopTimeStr ) );
-                break;
-            } else {
-                result.add( s1 );
-            }
-            sptr= TimeUtil.isoTimeFromArray( TimeUtil.getStopTime(tta) );
-            if ( sptr0.equals(sptr) ) {
-                throw new IllegalArgumentException("template fails to advance");
-            }
-            i=i+1;
+        while ( cursor.hasNext() ) {
+            result.add( cursor.next() );
         }
         return result.toArray( new String[result.size()] );
     }
     
+    /**
+     * format the names covering the time range, as formatRange does, but
+     * store them together in one char array rather than as Strings.  This
+     * uses several times less memory when there are millions of names, and
+     * each name is formatted directly into the array without creating a String.
+     * @param template the template
+     * @param startTimeStr the beginning of the interval to cover
+     * @param stopTimeStr the end of the interval to cover
+     * @param extra extra named parameters
+     * @return the formatted times which cover the span.
+     * @throws ParseException when the initial parsing cannot be done.
+     * @see #formatRange(java.lang.String, java.lang.String, java.lang.String, java.util.Map) 
+     */
+    public static PackedNames formatRangePacked( String template, 
+            String startTimeStr, 
+            String stopTimeStr, 
+            Map<String,String> extra ) throws ParseException {
+        URITemplate ut= new URITemplate(template);
+        IntervalCursor cursor= new IntervalCursor( ut, startTimeStr, stopTimeStr, extra );
+        PackedNames result= new PackedNames();
+        StringBuilder name= new StringBuilder(100);
+        while ( cursor.hasNext() ) {
+            name.setLength(0);
+            cursor.next( name );
+            result.add( name );
+        }
+        return result;
+    }
+    
     /**
      * return a the formatted name, using the spec and the given time range.
      * @param startTimeStr iso8601 formatted time.
@@ -1880,6 +2704,36 @@ public class URITemplate {
         return formatStartStopRange( startTime, stopTime, extra );
     }        
 
+    /**
+     * format the name as format(String,String,Map) does, but with the times 
+     * already decomposed.  When the template has an explicit width, the stop
+     * time is found from the start time.
+     * @param startTime seven-component start time, which may be modified.
+     * @param stopTime seven-component stop time, which is ignored when the width is explicit.
+     * @param extra extra parameters
+     * @return formatted time, often a resolvable URI.
+     */
+    String formatStartStop( int[] startTime, int[] stopTime, Map<String,String> extra ) {
+        if ( timeWidthIsExplicit ) {
+            stopTime = TimeUtil.add( startTime, timeWidth );
+        }
+        return formatStartStopRange( startTime, stopTime, extra );
+    }
+
+    /**
+     * as formatStartStop, but appending the name to the StringBuilder.
+     * @param startTime seven-component start time, which may be modified.
+     * @param stopTime seven-component stop time, which may be modified.
+     * @param extra extra parameters
+     * @param result the StringBuilder, to which the name is appended.
+     */
+    void formatStartStopTo( int[] startTime, int[] stopTime, Map<String,String> extra, StringBuilder result ) {
+        if ( timeWidthIsExplicit ) {
+            stopTime = TimeUtil.add( startTime, timeWidth );
+        }
+        formatTo( startTime, stopTime, extra, result );
+    }
+
     /**
      * return the formatted name, using the spec and the given time range.
      * @param timeRange fourteen-component time range
@@ -1919,7 +2773,287 @@ public class URITemplate {
      * @return formatted time, often a resolvable URI.
      */    
     public String formatStartStopRange( int[] startTime, int[] stopTime, Map<String,String> extra ) {
+        FormatCache cache= formatCache;
+        FormatCache.Key key= null;
+        if ( cache!=null ) {
+            key= cache.key( startTime, stopTime, extra );
+            String s= cache.get( key );
+            if ( s!=null ) return s;
+        }
+        StringBuilder result= new StringBuilder(100);
+        formatTo( startTime, stopTime, extra, result );
+        String s= result.toString();
+        if ( cache!=null ) {
+            cache.put( key, s );
+        }
+        return s;
+    }
+
+    /**
+     * keep up to maxEntries formatted names, so that formatting the same
+     * interval again returns the name without formatting it.  This is
+     * useful for servers which format the same few intervals repeatedly.
+     * The cache is used by the format methods which return Strings, and is
+     * safe to use from many threads, with the entries divided among
+     * separately locked stripes each evicting its least recently used 
+     * names.  Setting the size discards the names already cached and the
+     * statistics.
+     * @param maxEntries the maximum number of names kept, or 0 to disable the cache, which is the default.
+     * @see #getFormatCacheHits() 
+     */
+    public void setFormatCacheSize( int maxEntries ) {
+        if ( maxEntries<0 ) throw new IllegalArgumentException("maxEntries must not be negative");
+        if ( maxEntries==0 ) {
+            formatCache= null;
+        } else {
+            boolean usesExtra= false;
+            for ( int i=1; i<ndigits; i++ ) {
+                if ( handlers[i]==100 ) usesExtra= true;
+            }
+            formatCache= new FormatCache( maxEntries, usesExtra );
+        }
+    }
+
+    /**
+     * @return the number of names found in the format cache, or 0 when there is no cache.
+     * @see #setFormatCacheSize(int) 
+     */
+    public long getFormatCacheHits() {
+        FormatCache cache= formatCache;
+        return cache==null ? 0 : cache.getHits();
+    }
+
+    /**
+     * @return the number of names which were formatted because they were not in the format cache.
+     * @see #setFormatCacheSize(int) 
+     */
+    public long getFormatCacheMisses() {
+        FormatCache cache= formatCache;
+        return cache==null ? 0 : cache.getMisses();
+    }
+
+    /**
+     * @return the number of names removed from the format cache to keep within its size.
+     * @see #setFormatCacheSize(int) 
+     */
+    public long getFormatCacheEvictions() {
+        FormatCache cache= formatCache;
+        return cache==null ? 0 : cache.getEvictions();
+    }
 
+    /**
+     * return the number formatted by the field, before div is applied.
+     * When the field is days with delta and phasestart, the time is moved
+     * to the start of the cycle.
+     * @param idigit the field index
+     * @param timel the seven-component time
+     * @return the number
+     */
+    private int fieldDigit( int idigit, int[] timel ) {
+        int digit;
+        int delta= deltas[idigit];
+        switch (handlers[idigit]) {
+            case 0:
+                digit = timel[0];
+                break;
+            case 1:
+                if ( timel[0]<2000 ) {
+                    digit = timel[0] - 1900;
+                } else {
+                    digit = timel[0] - 2000;
+                }
+                break;
+            case 2:
+                digit = TimeUtil.dayOfYear( timel[0], timel[1], timel[2] );
+                break;
+            case 3:
+                digit = timel[1];
+                break;
+            case 4:
+                digit = timel[2];
+                break;
+            case 5:
+                digit = timel[3];
+                break;
+            case 6:
+                digit = timel[4];
+                break;
+            case 7:
+                digit = timel[5];
+                break;
+            case 8:
+                digit = timel[6];
+                break;
+            case 9:
+                digit = timel[6]/1000; //TODO verify
+                break;
+            default:
+                throw new RuntimeException("shouldn't get here");
+        }
+        if ( delta>1 ) {
+            int h= handlers[idigit];
+            switch (h) {
+                case 2:
+                case 3:
+                    // $j, $m all start with 1.
+                    digit= ( ( ( digit-1) / delta ) * delta ) + 1;
+                    break;
+                case 4:
+                    if ( phasestart!=null ) {
+                        int phaseStartJulian= getPhaseStartJulian();
+                        int ndays= TimeUtil.julianDay(  timel[0], timel[1], timel[2] ) - phaseStartJulian;
+                        int ncycles= floorDiv( ndays, timeWidth[2] );
+                        
+                        int[] tnew= TimeUtil.fromJulianDay(phaseStartJulian+ncycles*delta);
+                        timel[0]= tnew[0];
+                        timel[1]= tnew[1];
+                        timel[2]= tnew[2];
+                        
+                    } else {
+                        throw new IllegalArgumentException("phasestart not set for delta days");
+                    }   
+                    break;
+                default:
+                    digit= ( digit / delta ) * delta;
+                    break;
+            }
+        }
+        return digit;
+    }
+
+    private static final ThreadLocal<StringBuilder> SCRATCH= new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(100);
+        }
+    };
+
+    private static final ThreadLocal<char[]> SCRATCH_CHARS= new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[100];
+        }
+    };
+
+    /**
+     * format the name for the time range, appending it to the Appendable.
+     * The name is formed in a buffer which is reused by each thread, and
+     * a Writer is given the characters directly, so no String is created.
+     * @param startTime seven-component start time, which may be modified.
+     * @param stopTime seven-component stop time, which may be modified.
+     * @param extra extra parameters
+     * @param out the Appendable, such as a Writer for a response.
+     * @throws IOException when the Appendable throws IOException.
+     * @see #formatStartStopRange(int[], int[], java.util.Map) 
+     */
+    public void formatTo( int[] startTime, int[] stopTime, Map<String,String> extra, Appendable out ) throws IOException {
+        if ( out instanceof StringBuilder ) {
+            formatTo( startTime, stopTime, extra, (StringBuilder)out );
+            return;
+        }
+        StringBuilder result= SCRATCH.get();
+        result.setLength(0);
+        formatTo( startTime, stopTime, extra, result );
+        if ( out instanceof Writer ) {
+            int n= result.length();
+            char[] cc= SCRATCH_CHARS.get();
+            if ( cc.length<n ) {
+                cc= new char[ Math.max( n, cc.length*2 ) ];
+                SCRATCH_CHARS.set(cc);
+            }
+            result.getChars( 0, n, cc, 0 );
+            ((Writer)out).write( cc, 0, n );
+        } else {
+            out.append( result );
+        }
+    }
+
+    /**
+     * format the name for the time range, writing it as ASCII bytes into the
+     * buffer at its position, which is advanced past the name.  This allows
+     * names to be written to a FileChannel or SocketChannel without creating
+     * a String or using an encoder.
+     * @param startTime seven-component start time, which may be modified.
+     * @param stopTime seven-component stop time, which may be modified.
+     * @param extra extra parameters
+     * @param buf the buffer.
+     * @return the number of bytes written.
+     * @throws IllegalArgumentException when the name contains characters which are not ASCII.
+     * @throws java.nio.BufferOverflowException when the name does not fit in the remaining buffer, and nothing is written.
+     */
+    public int formatTo( int[] startTime, int[] stopTime, Map<String,String> extra, ByteBuffer buf ) {
+        StringBuilder result= formatScratch( startTime, stopTime, extra );
+        int n= result.length();
+        if ( buf.remaining()<n ) throw new BufferOverflowException();
+        if ( buf.hasArray() ) {
+            int pos= buf.position();
+            copyAscii( result, buf.array(), buf.arrayOffset() + pos );
+            ((Buffer)buf).position( pos + n ); // Buffer.position, so this runs with Java 8
+        } else {
+            for ( int i=0; i<n; i++ ) {
+                buf.put( (byte)result.charAt(i) );
+            }
+        }
+        return n;
+    }
+
+    /**
+     * format the name for the time range, writing it as ASCII bytes into the
+     * array at the offset.
+     * @param startTime seven-component start time, which may be modified.
+     * @param stopTime seven-component stop time, which may be modified.
+     * @param extra extra parameters
+     * @param dest the array.
+     * @param offset the index of the first byte written.
+     * @return the number of bytes written.
+     * @throws IllegalArgumentException when the name contains characters which are not ASCII.
+     * @throws IndexOutOfBoundsException when the name does not fit in the array, and nothing is written.
+     */
+    public int formatTo( int[] startTime, int[] stopTime, Map<String,String> extra, byte[] dest, int offset ) {
+        StringBuilder result= formatScratch( startTime, stopTime, extra );
+        int n= result.length();
+        if ( offset<0 || dest.length-offset<n ) {
+            throw new IndexOutOfBoundsException("name of "+n+" bytes does not fit at offset "+offset+" of "+dest.length);
+        }
+        copyAscii( result, dest, offset );
+        return n;
+    }
+
+    /**
+     * format the name into the buffer reused by each thread, and check that it is ASCII.
+     */
+    private StringBuilder formatScratch( int[] startTime, int[] stopTime, Map<String,String> extra ) {
+        StringBuilder result= SCRATCH.get();
+        result.setLength(0);
+        formatTo( startTime, stopTime, extra, result );
+        for ( int i=0; i<result.length(); i++ ) {
+            if ( result.charAt(i)>127 ) {
+                throw new IllegalArgumentException("formatted name is not ASCII at position "+i+": "+result);
+            }
+        }
+        return result;
+    }
+
+    private static void copyAscii( StringBuilder s, byte[] dest, int offset ) {
+        for ( int i=0; i<s.length(); i++ ) {
+            dest[offset+i]= (byte)s.charAt(i);
+        }
+    }
+
+    /**
+     * format the name for the time range, appending it to the StringBuilder.
+     * Each field is appended in turn, so a StringBuilder can be reused to
+     * format many names without creating intermediate Strings.  The result
+     * is the same as formatStartStopRange.
+     * @param startTime seven-component start time, which may be modified.
+     * @param stopTime seven-component stop time, which may be modified.
+     * @param extra extra parameters
+     * @param result the StringBuilder, to which the name is appended.
+     * @see #formatStartStopRange(int[], int[], java.util.Map) 
+     */
+    public void formatTo( int[] startTime, int[] stopTime, Map<String,String> extra, StringBuilder result ) {
+
+        int start= result.length();
         int[] timeWidthl;
         if ( timeWidthIsExplicit ) {
             timeWidthl= timeWidth;
@@ -1936,7 +3070,7 @@ public class URITemplate {
         
         if ( timeWidthIsExplicit ) {
             if ( this.phasestart!=null && timeWidth[2]>0 ) {
-                int phaseStartJulian= TimeUtil.julianDay( phasestart[0], phasestart[1], phasestart[2] );
+                int phaseStartJulian= getPhaseStartJulian();
                 int ndays= TimeUtil.julianDay(  startTime[0], startTime[1], startTime[2] ) - phaseStartJulian;
                 int ncycles= floorDiv( ndays, timeWidth[2] );
                 int[] tnew= TimeUtil.fromJulianDay(phaseStartJulian+ncycles*timeWidth[2]);
@@ -1949,29 +3083,15 @@ public class URITemplate {
         
         int[] timel= startTime;
         
-        StringBuilder result = new StringBuilder(100);
-
-        int offs = 0;
         int length;
         
-        String[] nf = new String[5];
-        nf[1] = "%1d";
-        nf[2] = "%02d";
-        nf[3] = "%03d";
-        nf[4] = "%04d";
 
         for (int idigit = 1; idigit < ndigits; idigit++) {
             if ( idigit==stopTimeDigit ) {
                 timel= stopTime;
             }
             
-            result.insert(offs, this.delims[idigit - 1]);
-            if (offsets[idigit] != -1) {  // note offsets[0] is always known
-
-                offs = offsets[idigit];
-            } else {
-                offs += this.delims[idigit - 1].length();
-            }
+            result.append( this.delims[idigit - 1] );
             if (lengths[idigit] != -1) {
                 length = lengths[idigit];
             } else {
@@ -1979,157 +3099,25 @@ public class URITemplate {
 
             }
             if (handlers[idigit] < 10) {
-                Map<String,String> qualm= qualifiersMaps[idigit];
-                int digit;
-                int delta=1;
-                if ( qualm!=null ) {
-                    String ddelta= getArg( qualm, "delta", null );
-                    if ( ddelta!=null ) {
-                        delta= Integer.parseInt(ddelta);
-                    } else {
-                        ddelta= getArg( qualm, "span", null );
-                        if ( ddelta!=null ) {
-                            delta= Integer.parseInt(ddelta);
-                        }
-                    }
-                }
-                switch (handlers[idigit]) {
-                    case 0:
-                        digit = timel[0];
-                        break;
-                    case 1:
-                        if ( timel[0]<2000 ) {
-                            digit = timel[0] - 1900;
-                        } else {
-                            digit = timel[0] - 2000;
-                        }
-                        break;
-                    case 2:
-                        digit = TimeUtil.dayOfYear( timel[0], timel[1], timel[2] );
-                        break;
-                    case 3:
-                        digit = timel[1];
-                        break;
-                    case 4:
-                        digit = timel[2];
-                        break;
-                    case 5:
-                        digit = timel[3];
-                        break;
-                    case 6:
-                        digit = timel[4];
-                        break;
-                    case 7:
-                        digit = timel[5];
-                        break;
-                    case 8:
-                        digit = timel[6];
-                        break;
-                    case 9:
-                        digit = timel[6]/1000; //TODO verify
-                        break;
-                    default:
-                        throw new RuntimeException("shouldn't get here");
-                }
-                if ( delta>1 ) {
-                    int h= handlers[idigit];
-                    switch (h) {
-                        case 2:
-                        case 3:
-                            // $j, $m all start with 1.
-                            digit= ( ( ( digit-1) / delta ) * delta ) + 1;
-                            break;
-                        case 4:
-                            if ( phasestart!=null ) {
-                                int phaseStartJulian= TimeUtil.julianDay( phasestart[0], phasestart[1], phasestart[2] );
-                                int ndays= TimeUtil.julianDay(  timel[0], timel[1], timel[2] ) - phaseStartJulian;
-                                int ncycles= floorDiv( ndays, timeWidth[2] );
-                                
-                                int[] tnew= TimeUtil.fromJulianDay(phaseStartJulian+ncycles*delta);
-                                timel[0]= tnew[0];
-                                timel[1]= tnew[1];
-                                timel[2]= tnew[2];
-                                
-                            } else {
-                                throw new IllegalArgumentException("phasestart not set for delta days");
-                            }   
-                            break;
-                        default:
-                            digit= ( digit / delta ) * delta;
-                            break;
-                    }
-                }
+                int digit= fieldDigit( idigit, timel );
                 if ( length<0 ) {
-                    String ss= String.valueOf(digit);
-                    result.insert(offs, ss);
-                    offs+= ss.length();
+                    result.append( digit );
                 } else {
-                    if ( this.qualifiersMaps[idigit]!=null ) {
-                        // TODO: suboptimal
-                        String div= getArg( this.qualifiersMaps[idigit], "div", null );
-                        if ( div!=null ) {
-                            digit= digit / (int)Float.parseFloat(div); //  use parseFloat to support 1E6
-                        }
-                        String pad= getArg( this.qualifiersMaps[idigit], "pad", null );
-                        if ( pad==null || pad.equals("zero") ) { 
-                            result.insert(offs, String.format(nf[length],digit) );
-                            offs+= length;
-                        } else {
-                            if ( digit<10 ) {
-                                switch (pad) {
-                                    case "space":
-                                        result.insert( offs, " " );
-                                        result.insert(offs, String.valueOf(digit) );
-                                        offs+= 2;
-                                        break;
-                                    case "underscore":
-                                        result.insert( offs, "_" );
-                                        result.insert(offs, String.valueOf(digit) );
-                                        offs+= 2;
-                                        break;
-                                // do nothing.
-                                    case "none":
-                                        result.insert(offs, String.valueOf(digit) );
-                                        offs+= 1;
-                                        break;
-                                    default:
-                                        result.insert(offs, String.format( nf[length], digit) );
-                                        offs+= length;
-                                        break;
-                                }
-                                
-                            } else {
-                                result.insert(offs, String.format( nf[length], digit) );
-                                offs+= length;
-                            }
-                        }
+                    digit= digit / divs[idigit];
+                    int pad= pads[idigit];
+                    if ( pad==PAD_ZERO || digit>=10 ) {
+                        appendZeroPadded( result, digit, length );
+                    } else if ( pad==PAD_SPACE ) {
+                        result.append( digit ).append( ' ' );
+                    } else if ( pad==PAD_UNDERSCORE ) {
+                        result.append( digit ).append( '_' );
                     } else {
-                        result.insert(offs, String.format( nf[length], digit) );
-                        offs += length;
+                        result.append( digit );
                     }
                 }
 
             } else if (handlers[idigit] == 13) { // month names
-                String cas= getArg( this.qualifiersMaps[idigit], "case", null );
-                String fmt= getArg( this.qualifiersMaps[idigit], "fmt", null );
-                String ins;
-                
-                if ( "full".equals(fmt) ) {
-                    ins= TimeUtil.monthNameFull(timel[1]);
-                } else {
-                    ins= TimeUtil.monthNameAbbrev(timel[1]);
-                }
-                
-                if ( cas==null || cas.equals("lc") ) {
-                    ins= ins.toLowerCase();
-                } else if ( cas.equals("cap") ) {
-                    // nothing more
-                } else if ( cas.equals("uc") ) {
-                    ins= ins.toUpperCase();
-                }
-                
-                result.insert(offs, ins);
-                offs += ins.length();
+                result.append( monthNames[idigit][timel[1]] );
 
             } else if (handlers[idigit] == 12 || handlers[idigit]==14 ) { // ignore
                 throw new RuntimeException("cannot format spec containing ignore");
@@ -2141,8 +3129,7 @@ public class URITemplate {
                         if ( length>20 ) throw new IllegalArgumentException("version lengths>20 not supported");
                         ins= "00000000000000000000".substring(0,length);
                     }
-                    result.insert( offs, ins );
-                    offs+= ins.length();
+                    result.append( ins );
                 } else {
                     FieldHandler fh1= handlerObjects[idigit];
                     int[] timeEnd = stopTime;
@@ -2155,6 +3142,9 @@ public class URITemplate {
                     try {
                         fh1.parse( ins, startTimeTest, timeWidthTest, extra );
                         System.arraycopy(startTimeTest, 0, timel, 0, NUM_TIME_DIGITS);
+                        if ( timeWidthl==timeWidth ) { // copy the template's width, which is shared by all threads.
+                            timeWidthl= new int[NUM_TIME_DIGITS];
+                        }
                         System.arraycopy(timeWidthTest, 0, timeWidthl, 0, NUM_TIME_DIGITS);
                         System.arraycopy(TimeUtil.add( timel, timeWidthl ), 0, stopTime, 0, NUM_TIME_DIGITS);
                         
@@ -2186,8 +3176,7 @@ public class URITemplate {
                             ins = padx + ins;
                         }
                     }
-                    result.insert( offs, ins );
-                    offs+= ins.length();
+                    result.append( ins );
                 }
 
             } else if (handlers[idigit] == 10) {
@@ -2198,8 +3187,15 @@ public class URITemplate {
             }
             
         }
-        result.insert(offs, this.delims[ndigits - 1]);
-        return result.toString().trim();
+        result.append( this.delims[ndigits - 1] );
+
+        // trim the appended text, as String.trim would.
+        int i= result.length();
+        while ( i>start && result.charAt(i-1)<=' ' ) i--;
+        result.setLength(i);
+        i= start;
+        while ( i<result.length() && result.charAt(i)<=' ' ) i++;
+        if ( i>start ) result.delete( start, i );
 
     }
     
@@ -0,0 +1,74 @@
+
+package org.hapiserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the BatchFormatter, which should agree with URITemplate.formatRange.
+ * @author jbf
+ */
+public class BatchFormatterTest {
+
+    public BatchFormatterTest() {
+    }
+
+    private static void doTest( List<String> templates, String start, String stop ) throws Exception {
+        Map<String,String> extra= Collections.emptyMap();
+        Map<String,String[]> result= BatchFormatter.formatRange( templates, start, stop, extra );
+        assertEquals( templates.size(), result.size() );
+        for ( String t: templates ) {
+            String[] expect= URITemplate.formatRange( t, start, stop, extra );
+            String[] actual= result.get(t);
+            assertNotNull( t, actual );
+            assertEquals( t, expect.length, actual.length );
+            for ( int i=0; i<expect.length; i++ ) {
+                assertEquals( t, expect[i], actual[i] );
+            }
+        }
+    }
+
+    @Test
+    public void testFormatRange() throws Exception {
+        System.out.println("# testFormatRange");
+        List<String> templates= new ArrayList<>();
+        for ( int i=0; i<50; i++ ) {
+            templates.add( String.format( "/data/inst%03d/$Y/inst%03d_$Y$m$d.cdf", i, i ) );
+        }
+        templates.add( "/data/ace/$Y$j.dat" );
+        templates.add( "/data/ace/$Y/$b/$d.dat" );
+        templates.add( "/data/ace/$Y/$(b;case=uc)$d_v$v.dat" );
+        templates.add( "/data/ace/$Y$m.dat" );
+        templates.add( "/data/ace/$Y.dat" );
+        templates.add( "/data/ace/$Y$m$d$H.dat" );
+        templates.add( "/data/ace/$Y$j$(H;span=6).dat" );
+        templates.add( "/data/ace/$Y$m$d$(H;span=6).dat" );
+        templates.add( "/data/ace/$Y$(m;delta=3).dat" );
+        templates.add( "/data/ace/$Y$m$(d;delta=10;phasestart=1979-01-01).dat" );
+        templates.add( "/data/ace/$Y$(j;delta=10).dat" );
+        templates.add( "/data/ace/$(Y;div=10)/$Y$m.dat" );
+        templates.add( "/data/ace/$y$m$d.dat" );
+        templates.add( "/data/ace/$Y$m$d_$(Y;end)$m$d.dat" );
+        templates.add( "/data/ace/$Y$m$d_$(hrinterval;names=01,02,03,04).dat" );
+        doTest( templates, "2023-12-30T06:00Z", "2024-03-02T12:00Z" );
+        doTest( templates, "2024-01-01", "2024-01-01" );
+        doTest( templates, "1999-12-31", "2000-01-02" );
+    }
+
+    @Test
+    public void testCadenceKey() {
+        System.out.println("# testCadenceKey");
+        String k1= new URITemplate( "/data/$Y/$Y$m$d.cdf" ).getCadenceKey();
+        assertNotNull( k1 );
+        assertEquals( k1, new URITemplate( "$Y$j.dat" ).getCadenceKey() );
+        assertEquals( k1, new URITemplate( "$Y$b$d_v$v.dat" ).getCadenceKey() );
+        assertFalse( k1.equals( new URITemplate( "$Y$m.dat" ).getCadenceKey() ) );
+        assertFalse( new URITemplate( "$Y$j$(H;span=6).dat" ).getCadenceKey().equals( new URITemplate( "$Y$j$H.dat" ).getCadenceKey() ) );
+        assertNull( new URITemplate( "$Y$m$d_$(Y;end)$m$d.dat" ).getCadenceKey() );
+        assertNull( new URITemplate( "$m$d.dat" ).getCadenceKey() );
+    }
+}
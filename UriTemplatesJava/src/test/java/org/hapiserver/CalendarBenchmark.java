@@ -0,0 +1,43 @@
+package org.hapiserver;
+
+/**
+ * Compares the calendar tables used by TimeUtil.fromJulianDay with the
+ * calculation they replace.  This is not run as a test.  Run it with:<pre>
+ *   mvn test-compile
+ *   java -cp target/classes:target/test-classes org.hapiserver.CalendarBenchmark
+ * </pre>
+ * Each is called for every day from 1900 to 2100, after a warm-up, and the
+ * mean time per call is printed.  Each is run twice, since the first
+ * measurement can include compilation.
+ * @author jbf
+ */
+public class CalendarBenchmark {
+
+    private static final int FIRST= TimeUtil.julianDay( 1900, 1, 1 );
+    private static final int LAST= TimeUtil.julianDay( 2100, 1, 1 );
+
+    private static long fromJulianDay( boolean table, int reps ) {
+        long hash= 0;
+        for ( int r=0; r<reps; r++ ) {
+            for ( int j=FIRST; j<LAST; j++ ) {
+                int[] t= table ? TimeUtil.fromJulianDay( j ) : TimeUtil.fromJulianDayFormula( j );
+                hash+= t[0] + t[1] + t[2];
+            }
+        }
+        return hash;
+    }
+
+    public static void main( String[] args ) {
+        int reps= 50;
+        long calls= (long)( LAST-FIRST ) * reps;
+        for ( boolean table: new boolean[] { false, true, false, true } ) {
+            long hash= fromJulianDay( table, reps ); // warm up
+            long t0= System.nanoTime();
+            hash+= fromJulianDay( table, reps );
+            long dt= System.nanoTime() - t0;
+            System.out.println( String.format( "%-24s %6.2f ns/call  (%d)", 
+                "fromJulianDay" + ( table ? " (table)" : "" ), dt/(double)calls, hash & 0xF ) );
+        }
+        System.out.println( "tables use about " + ( ( 9000-1583+2 )*4 + 4*367 ) / 1024 + " kilobytes" );
+    }
+}
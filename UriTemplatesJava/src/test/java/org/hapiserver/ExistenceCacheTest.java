@@ -0,0 +1,149 @@
+
+package org.hapiserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the ExistenceCache.
+ * @author jbf
+ */
+public class ExistenceCacheTest {
+
+    public ExistenceCacheTest() {
+    }
+
+    /**
+     * a checker where names ending in an even day exist, counting the checks.
+     */
+    private static class CountingChecker implements ExistenceCache.Checker {
+        AtomicInteger count= new AtomicInteger();
+        @Override
+        public boolean exists(String name) {
+            count.incrementAndGet();
+            return name.charAt(name.length()-5)%2==0;
+        }
+    }
+
+    @Test
+    public void testExists() throws Exception {
+        System.out.println("# testExists");
+        CountingChecker checker= new CountingChecker();
+        ExistenceCache cache= new ExistenceCache( 60000, 100 );
+        cache.setChecker( checker );
+        URITemplate ut= new URITemplate("/data/$Y$m$d.dat");
+        int[] tr= TimeUtil.parseISO8601TimeRange("2024-01-02/P1D");
+        assertTrue( cache.exists( ut, tr, Collections.<String,String>emptyMap() ) );
+        assertTrue( cache.exists( "/data/20240102.dat" ) );
+        assertFalse( cache.exists( "/data/20240103.dat" ) );
+        assertFalse( cache.exists( "/data/20240103.dat" ) );
+        assertEquals( 2, checker.count.get() );
+        assertEquals( 2, cache.getHits() );
+        assertEquals( 2, cache.getMisses() );
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        System.out.println("# testExpiry");
+        CountingChecker checker= new CountingChecker();
+        ExistenceCache cache= new ExistenceCache( 10, 100 );
+        cache.setChecker( checker );
+        assertTrue( cache.exists( "/data/20240102.dat" ) );
+        Thread.sleep(50);
+        assertTrue( cache.exists( "/data/20240102.dat" ) );
+        assertEquals( 2, checker.count.get() );
+        assertEquals( 0, cache.getHits() );
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        System.out.println("# testEviction");
+        CountingChecker checker= new CountingChecker();
+        ExistenceCache cache= new ExistenceCache( 60000, 10 );
+        cache.setChecker( checker );
+        String[] names= URITemplate.formatRange( "/data/$Y$m$d.dat", "2024-01-01", "2024-01-21" );
+        for ( String n: names ) {
+            cache.exists(n);
+        }
+        assertEquals( 10, cache.size() );
+        assertEquals( 10, cache.getEvictions() );
+        cache.exists( names[19] );
+        assertEquals( 1, cache.getHits() );
+        cache.exists( names[0] );
+        assertEquals( 21, checker.count.get() );
+    }
+
+    @Test
+    public void testListing() throws Exception {
+        System.out.println("# testListing");
+        CountingChecker checker= new CountingChecker();
+        ExistenceCache cache= new ExistenceCache( 60000, 100000 );
+        cache.setChecker( checker );
+        String[] names= URITemplate.formatRange( "/data/$Y$m$d.dat", "2000-01-01", "2030-01-01" );
+        List<String> present= new ArrayList<>();
+        for ( String n: names ) {
+            if ( n.charAt(n.length()-5)%2==0 ) present.add(n);
+        }
+        cache.setListing( present, 0.01 );
+        int found= 0;
+        for ( String n: names ) {
+            if ( cache.exists(n) ) found++;
+        }
+        assertEquals( present.size(), found );
+        int missing= names.length - present.size();
+        assertTrue( cache.getListingRejections() > missing * 0.95 );
+        assertTrue( checker.count.get() < present.size() + missing * 0.05 );
+
+        cache.setListing( Collections.singletonList( "/data/20240102.dat" ), 0.01 );
+        assertFalse( cache.exists( "/data/20240104.dat" ) );
+        cache.setListing( null, 0.01 );
+        assertTrue( cache.exists( "/data/20240104.dat" ) );
+    }
+
+    @Test(timeout=20000)
+    public void testSlowCheck() throws Exception {
+        System.out.println("# testSlowCheck");
+        final CountDownLatch checking= new CountDownLatch(1);
+        final CountDownLatch release= new CountDownLatch(1);
+        final ExistenceCache cache= new ExistenceCache( 60000, 100 );
+        cache.setChecker( new ExistenceCache.Checker() {
+            @Override
+            public boolean exists(String name) {
+                if ( name.equals("/slow/20240102.dat") ) {
+                    checking.countDown();
+                    try {
+                        release.await();
+                    } catch ( InterruptedException ex ) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+                return true;
+            }
+        });
+        Thread t= new Thread( new Runnable() {
+            @Override
+            public void run() {
+                cache.exists("/slow/20240102.dat");
+            }
+        });
+        t.start();
+        try {
+            assertTrue( checking.await( 10, TimeUnit.SECONDS ) );
+            // other names are answered while the slow check is in progress.
+            assertTrue( cache.exists("/fast/20240102.dat") );
+            assertTrue( cache.exists("/fast/20240102.dat") );
+            assertEquals( 1, cache.getHits() );
+        } finally {
+            release.countDown();
+        }
+        t.join();
+        assertEquals( 2, cache.size() );
+    }
+}
+
@@ -0,0 +1,235 @@
+
+package org.hapiserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the ExistenceResolver, using a local HTTP server as a stand-in
+ * for a remote data server.
+ * @author jbf
+ */
+public class ExistenceResolverTest {
+
+    public ExistenceResolverTest() {
+    }
+
+    /**
+     * a stand-in server where files exist on even days, and every request for
+     * the 5th fails once with 503 before succeeding.
+     */
+    private static class StandIn implements HttpHandler {
+        AtomicInteger inFlight= new AtomicInteger();
+        AtomicInteger maxInFlight= new AtomicInteger();
+        Map<String,AtomicInteger> requests= new ConcurrentHashMap<>();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int n= inFlight.incrementAndGet();
+            synchronized ( this ) {
+                if ( n>maxInFlight.get() ) maxInFlight.set(n);
+            }
+            try {
+                Thread.sleep(20);
+                String path= exchange.getRequestURI().getPath();
+                AtomicInteger count= requests.get(path);
+                if ( count==null ) {
+                    requests.putIfAbsent( path, new AtomicInteger() );
+                    count= requests.get(path);
+                }
+                int attempt= count.incrementAndGet();
+                int day= Integer.parseInt( path.substring( path.length()-6, path.length()-4 ) );
+                // the client may start its next request as soon as it has the response.
+                inFlight.decrementAndGet();
+                if ( day==5 && attempt==1 ) {
+                    exchange.sendResponseHeaders( 503, -1 );
+                } else if ( day%2==0 || day==5 ) {
+                    exchange.getResponseHeaders().add( "Last-Modified", "Tue, 17 Dec 2024 10:00:00 GMT" );
+                    exchange.getResponseHeaders().add( "Content-Length", String.valueOf(1000+day) );
+                    exchange.sendResponseHeaders( 200, -1 );
+                } else {
+                    exchange.sendResponseHeaders( 404, -1 );
+                }
+            } catch ( InterruptedException ex ) {
+                throw new IOException(ex);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        System.out.println("# testResolve");
+        StandIn standIn= new StandIn();
+        HttpServer server= HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        ExecutorService serverExec= Executors.newFixedThreadPool(20);
+        server.setExecutor( serverExec );
+        server.createContext( "/data/", standIn );
+        server.start();
+        try {
+            String template= "http://127.0.0.1:"+server.getAddress().getPort()+"/data/$Y$m$d.dat";
+            String[] names= URITemplate.formatRange( template, "2024-01-01", "2024-02-01" );
+            assertEquals( 31, names.length );
+
+            ExistenceResolver r= new ExistenceResolver( 8, 3 );
+            r.setInitialBackoffMillis( 10 );
+            final Map<String,ExistenceResolver.Result> results= new HashMap<>();
+            final Set<String> threads= Collections.synchronizedSet( new HashSet<String>() );
+            int count= r.resolve( new URITemplate(template), names, new ExistenceResolver.Listener() {
+                @Override
+                public void result(ExistenceResolver.Result result) {
+                    results.put( result.getName(), result );
+                    threads.add( Thread.currentThread().getName() );
+                }
+            });
+            assertEquals( 16, count );
+            assertEquals( 31, results.size() );
+            assertEquals( 1, threads.size() );
+            assertTrue( "per-host limit exceeded", standIn.maxInFlight.get()<=3 );
+
+            ExistenceResolver.Result r2= results.get(names[1]);
+            assertTrue( r2.exists() );
+            assertEquals( 1002, r2.getSize() );
+            assertEquals( 1734429600000L, r2.getLastModified() );
+            assertArrayEquals( new int[] { 2024,1,2,0,0,0,0, 2024,1,3,0,0,0,0 }, r2.getTimeRange() );
+
+            assertFalse( results.get(names[2]).exists() );
+            assertNull( results.get(names[2]).getException() );
+
+            assertTrue( results.get(names[4]).exists() );
+            assertEquals( 2, standIn.requests.get("/data/20240105.dat").get() );
+
+        } finally {
+            server.stop(0);
+            serverExec.shutdown();
+        }
+    }
+
+    @Test
+    public void testResolveRetriesExhausted() throws Exception {
+        System.out.println("# testResolveRetriesExhausted");
+        final AtomicInteger requests= new AtomicInteger();
+        HttpServer server= HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/data/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                exchange.sendResponseHeaders( 500, -1 );
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            String name= "http://127.0.0.1:"+server.getAddress().getPort()+"/data/20240101.dat";
+            ExistenceResolver r= new ExistenceResolver( 2, 2 );
+            r.setMaxRetries(2);
+            r.setInitialBackoffMillis(1);
+            final ExistenceResolver.Result[] result= new ExistenceResolver.Result[1];
+            int count= r.resolve( null, new String[] { name }, new ExistenceResolver.Listener() {
+                @Override
+                public void result(ExistenceResolver.Result r) {
+                    result[0]= r;
+                }
+            });
+            assertEquals( 0, count );
+            assertEquals( 3, requests.get() );
+            assertNotNull( result[0].getException() );
+            assertNull( result[0].getTimeRange() );
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test(timeout=20000)
+    public void testCheckThrows() throws Exception {
+        System.out.println("# testCheckThrows");
+        // the port is out of range, so the connection throws IllegalArgumentException rather than IOException.
+        String[] names= new String[] { "http://127.0.0.1:99999/data/20240101.dat", "http://127.0.0.1:99999/data/20240102.dat" };
+        ExistenceResolver r= new ExistenceResolver( 2, 1 );
+        r.setMaxRetries(0);
+        final Map<String,ExistenceResolver.Result> results= new ConcurrentHashMap<>();
+        int count= r.resolve( null, names, new ExistenceResolver.Listener() {
+            @Override
+            public void result(ExistenceResolver.Result result) {
+                results.put( result.getName(), result );
+            }
+        });
+        assertEquals( 0, count );
+        assertEquals( 2, results.size() );
+        for ( String n: names ) {
+            assertFalse( results.get(n).exists() );
+            assertNotNull( results.get(n).getException() );
+        }
+    }
+
+    @Test
+    public void testSlowHostDoesNotStallOthers() throws Exception {
+        System.out.println("# testSlowHostDoesNotStallOthers");
+        HttpServer slow= HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        ExecutorService slowExec= Executors.newFixedThreadPool(4);
+        slow.setExecutor( slowExec );
+        slow.createContext( "/data/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(500);
+                } catch ( InterruptedException ex ) {
+                    throw new IOException(ex);
+                }
+                exchange.sendResponseHeaders( 200, -1 );
+                exchange.close();
+            }
+        });
+        HttpServer fast= HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        fast.createContext( "/data/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders( 200, -1 );
+                exchange.close();
+            }
+        });
+        slow.start();
+        fast.start();
+        try {
+            String[] slowNames= URITemplate.formatRange( "http://127.0.0.1:"+slow.getAddress().getPort()+"/data/$Y$m$d.dat", "2024-01-01", "2024-01-04" );
+            String[] fastNames= URITemplate.formatRange( "http://127.0.0.1:"+fast.getAddress().getPort()+"/data/$Y$m$d.dat", "2024-01-01", "2024-01-07" );
+            String[] names= new String[ slowNames.length + fastNames.length ];
+            System.arraycopy( slowNames, 0, names, 0, slowNames.length );
+            System.arraycopy( fastNames, 0, names, slowNames.length, fastNames.length );
+            // the slow host is listed first, and could occupy every pool thread if they waited for it.
+            ExistenceResolver r= new ExistenceResolver( 3, 1 );
+            final java.util.List<String> order= new java.util.ArrayList<>();
+            int count= r.resolve( null, names, new ExistenceResolver.Listener() {
+                @Override
+                public void result(ExistenceResolver.Result result) {
+                    order.add( result.getName() );
+                }
+            });
+            assertEquals( names.length, count );
+            int lastFast= 0;
+            for ( String n: fastNames ) lastFast= Math.max( lastFast, order.indexOf(n) );
+            // the fast checks all complete while the first slow check is in flight.
+            assertEquals( "fast host waited for the slow host", fastNames.length-1, lastFast );
+        } finally {
+            slow.stop(0);
+            fast.stop(0);
+            slowExec.shutdown();
+        }
+    }
+}
+
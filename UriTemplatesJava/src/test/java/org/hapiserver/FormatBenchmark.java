@@ -0,0 +1,63 @@
+
+package org.hapiserver;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Measures the time to format names, for comparing changes to the formatter.
+ * This is not run as a test.  Run it with:<pre>
+ *   mvn test-compile
+ *   java -cp target/classes:target/test-classes org.hapiserver.FormatBenchmark
+ * </pre>
+ * Each template formats a day's worth of minutes repeatedly, after a warm-up,
+ * and the mean time per name is printed.
+ * @author jbf
+ */
+public class FormatBenchmark {
+
+    private static final String[] TEMPLATES= new String[] {
+        "/data/$Y/$m/$Y$m$d.cdf",
+        "/data/$Y/$j/data_$Y$j$H$M.dat",
+        "/data/$Y/$(b;case=uc)/$Y$b$d_v$v.dat",
+        "$Y-$m-$dT$H:$M:$S"
+    };
+
+    private static final int NAMES= 1440;
+
+    private static long run( URITemplate ut, int[][] starts, int[][] stops, Map<String,String> extra, int reps ) {
+        long hash= 0;
+        int[] start= new int[TimeUtil.TIME_DIGITS];
+        int[] stop= new int[TimeUtil.TIME_DIGITS];
+        for ( int r=0; r<reps; r++ ) {
+            for ( int i=0; i<starts.length; i++ ) {
+                System.arraycopy( starts[i], 0, start, 0, TimeUtil.TIME_DIGITS );
+                System.arraycopy( stops[i], 0, stop, 0, TimeUtil.TIME_DIGITS );
+                hash+= ut.formatStartStopRange( start, stop, extra ).hashCode();
+            }
+        }
+        return hash;
+    }
+
+    public static void main( String[] args ) {
+        int[][] starts= new int[NAMES][];
+        int[][] stops= new int[NAMES][];
+        int[] t= new int[] { 2024, 1, 1, 0, 0, 0, 0 };
+        int[] oneMinute= new int[] { 0, 0, 0, 0, 1, 0, 0 };
+        for ( int i=0; i<NAMES; i++ ) {
+            starts[i]= t;
+            t= TimeUtil.add( t, oneMinute );
+            stops[i]= t;
+        }
+        Map<String,String> extra= Collections.emptyMap();
+        for ( String template: TEMPLATES ) {
+            URITemplate ut= new URITemplate(template);
+            long hash= run( ut, starts, stops, extra, 200 ); // warm up
+            int reps= 500;
+            long t0= System.nanoTime();
+            hash+= run( ut, starts, stops, extra, reps );
+            long dt= System.nanoTime() - t0;
+            System.out.println( String.format( "%-40s %8.1f ns/name  (%d)", template, dt/(double)( reps*NAMES ), hash & 0xF ) );
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.hapiserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the format cache of URITemplate.
+ * @author jbf
+ */
+public class FormatCacheTest {
+
+    public FormatCacheTest() {
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        System.out.println("# testHitsAndMisses");
+        URITemplate ut= new URITemplate("/data/$Y/$Y$m$d.dat");
+        assertEquals( "/data/2024/20240102.dat", ut.format( "2024-01-02", "2024-01-03" ) );
+        assertEquals( 0, ut.getFormatCacheMisses() );
+        ut.setFormatCacheSize( 100 );
+        for ( int i=0; i<3; i++ ) {
+            assertEquals( "/data/2024/20240102.dat", ut.format( "2024-01-02", "2024-01-03" ) );
+        }
+        assertEquals( 1, ut.getFormatCacheMisses() );
+        assertEquals( 2, ut.getFormatCacheHits() );
+
+        int[] start= new int[] { 2024, 1, 2, 0, 0, 0, 0 };
+        int[] stop= new int[] { 2024, 1, 3, 0, 0, 0, 0 };
+        assertEquals( "/data/2024/20240102.dat", ut.formatStartStopRange( start, stop ) );
+        assertEquals( 3, ut.getFormatCacheHits() );
+
+        for ( int d=1; d<=300; d++ ) {
+            ut.formatTimeRange( TimeUtil.parseISO8601TimeRange( "2023-001/P1D" ) ); // hit after the first
+            int[] t= new int[] { 2020, 1, d, 0, 0, 0, 0 };
+            ut.formatStartStopRange( t, t );
+        }
+        assertTrue( ut.getFormatCacheEvictions()>0 );
+
+        ut.setFormatCacheSize( 0 );
+        assertEquals( 0, ut.getFormatCacheHits() );
+    }
+
+    @Test
+    public void testExtra() {
+        System.out.println("# testExtra");
+        URITemplate ut= new URITemplate("$Y$m$d_v$v.dat");
+        ut.setFormatCacheSize( 10 );
+        Map<String,String> extra= new HashMap<>();
+        extra.put( "v", "1.2" );
+        assertEquals( "20240102_v1.2.dat", ut.format( "2024-01-02", "2024-01-03", extra ) );
+        extra.put( "v", "1.3" );
+        assertEquals( "20240102_v1.3.dat", ut.format( "2024-01-02", "2024-01-03", extra ) );
+        assertEquals( 0, ut.getFormatCacheHits() );
+        assertEquals( "20240102_v1.3.dat", ut.format( "2024-01-02", "2024-01-03", extra ) );
+        assertEquals( 1, ut.getFormatCacheHits() );
+
+        // extra parameters are not part of the key when no field uses them.
+        ut= new URITemplate("$Y$m$d.dat");
+        ut.setFormatCacheSize( 10 );
+        ut.format( "2024-01-02", "2024-01-03", extra );
+        ut.format( "2024-01-02", "2024-01-03", Collections.emptyMap() );
+        assertEquals( 1, ut.getFormatCacheHits() );
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        System.out.println("# testThreads");
+        final URITemplate ut= new URITemplate("$Y/$j/$Y$j$H.dat");
+        ut.setFormatCacheSize( 500 );
+        ExecutorService ex= Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> ff= new ArrayList<>();
+        for ( int k=0; k<4; k++ ) {
+            ff.add( ex.submit( () -> {
+                boolean ok= true;
+                for ( int i=0; i<20000; i++ ) {
+                    int h= i % 1000;
+                    int[] t= new int[] { 2024, 1, 1, h, 0, 0, 0 };
+                    TimeUtil.normalizeTime(t);
+                    String expect= String.format( "%04d/%03d/%04d%03d%02d.dat", t[0], TimeUtil.dayOfYear( t[0], t[1], t[2] ),
+                        t[0], TimeUtil.dayOfYear( t[0], t[1], t[2] ), t[3] );
+                    ok= ok && expect.equals( ut.formatStartStopRange( t, t.clone() ) );
+                }
+                return ok;
+            } ) );
+        }
+        for ( Future<Boolean> f: ff ) {
+            assertTrue( f.get() );
+        }
+        ex.shutdown();
+        assertEquals( 80000, ut.getFormatCacheHits() + ut.getFormatCacheMisses() );
+    }
+}
@@ -0,0 +1,140 @@
+
+package org.hapiserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the HtmlIndexScanner, using a local HTTP server as a stand-in
+ * for a remote listing.
+ * @author jbf
+ */
+public class HtmlIndexScannerTest {
+
+    public HtmlIndexScannerTest() {
+    }
+
+    private static class Collector implements HtmlIndexScanner.Listener {
+        List<String> names= new ArrayList<>();
+        List<int[]> ranges= new ArrayList<>();
+        @Override
+        public void found(String name, int[] timeRange, Map<String, String> extra) {
+            names.add(name);
+            ranges.add(timeRange);
+        }
+    }
+
+    /**
+     * an input stream which returns one byte at a time, so that every
+     * token is split across reads.
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+        TrickleInputStream( InputStream in ) {
+            super(in);
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(1,len) );
+        }
+    }
+
+    private static final String LISTING= "<html><head><title>Index of /data</title></head><body>\n"
+            + "<h1>Index of /data</h1><pre><a href=\"?C=N;O=D\">Name</a> <a href=\"?C=M;O=A\">Last modified</a>\n"
+            + "<a href=\"/\">Parent Directory</a>\n"
+            + "<a href=\"20240101.dat\">20240101.dat</a>  01-Jan-2024 00:10  1.2K\n"
+            + "<A HREF='20240102.dat'>20240102.dat</A>  02-Jan-2024 00:10  1.2K\n"
+            + "<a href = 20240103.dat>20240103.dat</a>  03-Jan-2024 00:10  1.2K\n"
+            + "<a href=\"20240104.dat.md5\">20240104.dat.md5</a>\n"
+            + "<a href=\"2024010x.dat\">2024010x.dat</a>\n"
+            + "<a class=\"hhref\" href=\"20240105.dat\">20240105.dat</a>\n"
+            + "</pre></body></html>\n";
+
+    @Test
+    public void testScanStream() throws IOException {
+        System.out.println("# testScanStream");
+        HtmlIndexScanner s= new HtmlIndexScanner( new URITemplate("$Y$m$d.dat") );
+        Collector c= new Collector();
+        int n= s.scan( new ByteArrayInputStream( LISTING.getBytes(StandardCharsets.UTF_8) ), c );
+        assertEquals( 4, n );
+        assertEquals( "20240101.dat", c.names.get(0) );
+        assertEquals( "20240102.dat", c.names.get(1) );
+        assertEquals( "20240103.dat", c.names.get(2) );
+        assertEquals( "20240105.dat", c.names.get(3) );
+        assertArrayEquals( new int[] { 2024,1,3,0,0,0,0, 2024,1,4,0,0,0,0 }, c.ranges.get(2) );
+
+        c= new Collector();
+        n= s.scan( new TrickleInputStream( new ByteArrayInputStream( LISTING.getBytes(StandardCharsets.UTF_8) ) ), c );
+        assertEquals( 4, n );
+    }
+
+    @Test
+    public void testScanLongHref() throws IOException {
+        System.out.println("# testScanLongHref");
+        HtmlIndexScanner s= new HtmlIndexScanner( new URITemplate("$Y$m$d.dat"), 20 );
+        StringBuilder b= new StringBuilder("<a href=\"");
+        for ( int i=0; i<100; i++ ) b.append("x");
+        b.append("20240101.dat\">long</a><a href=\"20240102.dat\">short</a>");
+        Collector c= new Collector();
+        int n= s.scan( new ByteArrayInputStream( b.toString().getBytes(StandardCharsets.UTF_8) ), c );
+        assertEquals( 1, n );
+        assertEquals( "20240102.dat", c.names.get(0) );
+    }
+
+    /**
+     * serve a listing of many thousands of files from a local server, writing
+     * it out in pieces so that it is never held in memory.
+     * @throws Exception
+     */
+    @Test
+    public void testScanHttp() throws Exception {
+        System.out.println("# testScanHttp");
+        final String[] names= URITemplate.formatRange( "data_$Y$m$d$H.cdf", "2000-01-01", "2001-01-01" );
+        HttpServer server= HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/data/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders( 200, 0 );
+                try ( OutputStream out= exchange.getResponseBody() ) {
+                    out.write( "<html><body><pre>\n".getBytes(StandardCharsets.US_ASCII) );
+                    for ( String n: names ) {
+                        String line= "<a href=\""+n+"\">"+n+"</a>   17-Dec-2024 10:00  20M\n";
+                        out.write( line.getBytes(StandardCharsets.US_ASCII) );
+                    }
+                    out.write( "</pre></body></html>\n".getBytes(StandardCharsets.US_ASCII) );
+                }
+            }
+        } );
+        server.start();
+        try {
+            URL url= new URL( "http://127.0.0.1:"+server.getAddress().getPort()+"/data/" );
+            HtmlIndexScanner s= new HtmlIndexScanner( new URITemplate("data_$Y$m$d$H.cdf") );
+            Collector c= new Collector();
+            int n= s.scan( url, c );
+            assertEquals( names.length, n );
+            assertEquals( names[names.length-1], c.names.get(n-1) );
+
+            try {
+                s.scan( new URL( "http://127.0.0.1:"+server.getAddress().getPort()+"/missing/" ), c );
+                fail("expected IOException for 404");
+            } catch ( IOException ex ) {
+                // expected
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.hapiserver;
+
+import java.io.StringWriter;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the IncrementalFormatter.
+ * @author jbf
+ */
+public class IncrementalFormatterTest {
+
+    public IncrementalFormatterTest() {
+    }
+
+    @Test
+    public void testIsIncremental() {
+        System.out.println("# testIsIncremental");
+        assertTrue( new IncrementalFormatter( new URITemplate("$Y/$m/$Y$m$d.dat") ).isIncremental() );
+        assertFalse( new IncrementalFormatter( new URITemplate("/data/$Y/$b/$Y$j_$H$M$S.$(subsec;places=3)") ).isIncremental() );
+        assertTrue( new IncrementalFormatter( new URITemplate("$Y $b $d.cdf") ).isIncremental() );
+        assertFalse( new IncrementalFormatter( new URITemplate("$Y$m$d_v$v.dat") ).isIncremental() );
+        assertFalse( new IncrementalFormatter( new URITemplate("$Y$m$d_$(Y;end)$m$d.dat") ).isIncremental() );
+        assertFalse( new IncrementalFormatter( new URITemplate("$(d;pad=space)$Y.dat") ).isIncremental() );
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        System.out.println("# testFormat");
+        String[] templates= new String[] { "$Y/$m/$Y$m$d.dat", "/data/$Y/$Y$j_$H$M$S.cdf", "$Y $b $d.cdf", "$y$m$d$(H;delta=6)",
+            "$(Y;div=10)/$Y$(m;delta=3)", "$Y$m$d_$v.dat", "$Y$m$dT$H$M$S.$(N;div=1000000)" };
+        Random r= new Random(5334);
+        for ( String t: templates ) {
+            URITemplate ut= new URITemplate(t);
+            IncrementalFormatter f= new IncrementalFormatter( ut );
+            int[] time= new int[] { 1999, 12, 31, 22, 0, 0, 0 };
+            for ( int i=0; i<1000; i++ ) {
+                if ( i%100==99 ) {
+                    time[0]= 1990 + r.nextInt(20); // jump
+                } else {
+                    time[3]+= 1;
+                    time[5]+= r.nextInt(3);
+                    time[6]+= 123456789;
+                }
+                TimeUtil.normalizeTime(time);
+                String expect= ut.formatStartStopRange( time.clone(), time.clone() );
+                assertEquals( t, expect, f.format( time, time ) );
+                StringWriter w= new StringWriter();
+                f.formatTo( time, time, w );
+                assertEquals( t, expect, w.toString() );
+            }
+        }
+    }
+
+    @Test
+    public void testTooWide() {
+        System.out.println("# testTooWide");
+        URITemplate ut= new URITemplate("$Y$m$d.dat");
+        IncrementalFormatter f= new IncrementalFormatter( ut );
+        int[] t= new int[] { 9999, 12, 31, 0, 0, 0, 0 };
+        assertEquals( "99991231.dat", f.format( t, t ) );
+        t= new int[] { 10000, 1, 1, 0, 0, 0, 0 };
+        assertEquals( ut.formatStartStopRange( t.clone(), t.clone() ), f.format( t, t ) );
+        t= new int[] { 2000, 1, 2, 0, 0, 0, 0 };
+        assertEquals( "20000102.dat", f.format( t, t ) );
+    }
+}
@@ -0,0 +1,122 @@
+
+package org.hapiserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the IntervalCursor.
+ * @author jbf
+ */
+public class IntervalCursorTest {
+
+    public IntervalCursorTest() {
+    }
+
+    private static final Map<String,String> EXTRA= Collections.emptyMap();
+
+    @Test
+    public void testNext() throws Exception {
+        System.out.println("# testNext");
+        IntervalCursor c= new IntervalCursor( new URITemplate("$Y$m$d.dat"), "2023-12-30T06:00Z", "2024-01-02T12:00Z", EXTRA );
+        assertNull( c.getName() );
+        assertTrue( c.hasNext() );
+        assertEquals( "20231230.dat", c.next() );
+        assertArrayEquals( new int[] { 2023, 12, 30, 0, 0, 0, 0 }, c.getStartTime() );
+        assertArrayEquals( new int[] { 2023, 12, 31, 0, 0, 0, 0 }, c.getStopTime() );
+        List<String> names= new ArrayList<>();
+        while ( c.hasNext() ) {
+            names.add( c.next() );
+        }
+        assertEquals( "[20231231.dat, 20240101.dat, 20240102.dat]", names.toString() );
+        assertEquals( "20240102.dat", c.getName() );
+        try {
+            c.next();
+            fail("expected IllegalArgumentException");
+        } catch ( IllegalArgumentException ex ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAgreesWithFormatRange() throws Exception {
+        System.out.println("# testAgreesWithFormatRange");
+        String[] templates= new String[] { "$Y$j_$H.dat", "$Y$m$d_$(Y;end)$m$d.dat", "$Y$m$(d;delta=10;phasestart=1979-01-01)",
+            "$Y_$(m;span=6)", "$Y/$b/$d_v$v.dat" };
+        for ( String t: templates ) {
+            String[] expect= URITemplate.formatRange( t, "2023-11-30T06:00Z", "2024-03-02T12:00Z", EXTRA );
+            IntervalCursor c= new IntervalCursor( new URITemplate(t), "2023-11-30T06:00Z", "2024-03-02T12:00Z", EXTRA );
+            List<String> names= new ArrayList<>();
+            while ( c.hasNext() ) {
+                names.add( c.next() );
+            }
+            assertArrayEquals( t, expect, names.toArray( new String[names.size()] ) );
+        }
+    }
+
+    @Test
+    public void testNextStringBuilder() throws Exception {
+        System.out.println("# testNextStringBuilder");
+        String[] templates= new String[] { "$Y$j_$H.dat", "$Y$m$d_$(Y;end)$m$d.dat", "$Y/$b/$d_v$v.dat", "$Y$(m;span=6)$d" };
+        for ( String t: templates ) {
+            String[] expect= URITemplate.formatRange( t, "2023-11-30T06:00Z", "2024-03-02T12:00Z", EXTRA );
+            IntervalCursor c= new IntervalCursor( new URITemplate(t), "2023-11-30T06:00Z", "2024-03-02T12:00Z", EXTRA );
+            StringBuilder name= new StringBuilder();
+            int i= 0;
+            while ( c.hasNext() ) {
+                name.setLength(0);
+                c.next( name );
+                assertEquals( t, expect[i], name.toString() );
+                assertEquals( t, expect[i], c.getName() );
+                i++;
+            }
+            assertEquals( t, expect.length, i );
+        }
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        System.out.println("# testSeek");
+        IntervalCursor c= new IntervalCursor( new URITemplate("$Y$j$H.dat"), "2024-01-01", "2025-01-01", EXTRA );
+        int n= 0;
+        while ( c.hasNext() ) {
+            c.next();
+            n++;
+        }
+        assertEquals( 366*24, n );
+        c.seek( new int[] { 2024, 3, 1, 5, 30, 0, 0 } );
+        assertTrue( c.hasNext() );
+        assertEquals( "202406105.dat", c.next() );
+        assertEquals( "202406106.dat", c.next() );
+        c.seek( new int[] { 2025, 1, 1, 0, 0, 0, 0 } );
+        assertFalse( c.hasNext() );
+    }
+
+    @Test
+    public void testSteppingAndParsing() throws Exception {
+        System.out.println("# testSteppingAndParsing");
+        // fixed cadence, so the intervals are counted rather than parsed.
+        IntervalCursor c= new IntervalCursor( new URITemplate("$Y$m$(d;delta=10;phasestart=1979-01-01)"), "1979-01-05", "1979-02-01", EXTRA );
+        List<String> names= new ArrayList<>();
+        while ( c.hasNext() ) {
+            names.add( c.next() );
+        }
+        assertEquals( "[19790101, 19790111, 19790121, 19790131]", names.toString() );
+        assertArrayEquals( new int[] { 1979, 1, 31, 0, 0, 0, 0 }, c.getStartTime() );
+        assertArrayEquals( new int[] { 1979, 2, 10, 0, 0, 0, 0 }, c.getStopTime() );
+        c.seek( new int[] { 1978, 12, 25, 0, 0, 0, 0 } );
+        assertEquals( "19781222", c.next() );
+
+        // the hrinterval handler sets the time, so each name is parsed.
+        c= new IntervalCursor( new URITemplate("$Y$m$d_$(hrinterval;names=01,02,03,04)"), "2024-01-01T10:00Z", "2024-01-02T02:00Z", EXTRA );
+        names.clear();
+        while ( c.hasNext() ) {
+            names.add( c.next() );
+        }
+        assertEquals( "[20240101_02, 20240101_03, 20240101_04, 20240102_01]", names.toString() );
+    }
+}
@@ -0,0 +1,136 @@
+package org.hapiserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the IntervalPublisher.
+ * @author jbf
+ */
+public class IntervalPublisherTest {
+
+    public IntervalPublisherTest() {
+    }
+
+    private static final Map<String,String> EXTRA= Collections.emptyMap();
+
+    /**
+     * subscriber which records what it receives, requesting nothing itself.
+     */
+    private static class Recorder implements IntervalPublisher.Subscriber {
+        IntervalPublisher.Subscription s;
+        List<String> names= new ArrayList<>();
+        Throwable error= null;
+        int completions= 0;
+
+        @Override
+        public void onSubscribe( IntervalPublisher.Subscription s ) {
+            this.s= s;
+        }
+        @Override
+        public void onNext( IntervalPublisher.Interval interval ) {
+            names.add( interval.getName() );
+        }
+        @Override
+        public void onError( Throwable throwable ) {
+            error= throwable;
+        }
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        System.out.println("# testRequest");
+        IntervalPublisher p= new IntervalPublisher( "$Y$m$d.dat", "2023-12-30T06:00Z", "2024-01-03T12:00Z", EXTRA );
+        Recorder r= new Recorder();
+        p.subscribe( r );
+        assertTrue( r.names.isEmpty() );
+        r.s.request(2);
+        assertEquals( "[20231230.dat, 20231231.dat]", r.names.toString() );
+        assertEquals( 0, r.completions );
+        r.s.request(Long.MAX_VALUE);
+        r.s.request(Long.MAX_VALUE);
+        assertEquals( 5, r.names.size() );
+        assertEquals( 1, r.completions );
+        assertNull( r.error );
+
+        Recorder r2= new Recorder();
+        p.subscribe( r2 );
+        r2.s.request(1);
+        assertEquals( "[20231230.dat]", r2.names.toString() );
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        System.out.println("# testCancel");
+        IntervalPublisher p= new IntervalPublisher( "$Y$m$d$H$M$S.dat", "2000-01-01", "2400-01-01", EXTRA );
+        final int[] count= new int[1];
+        Recorder r= new Recorder() {
+            @Override
+            public void onNext( IntervalPublisher.Interval interval ) {
+                count[0]++;
+                if ( count[0]==100000 ) {
+                    s.cancel();
+                } else {
+                    s.request(1); // re-entrant request must not grow the stack.
+                }
+            }
+        };
+        p.subscribe( r );
+        r.s.request(1);
+        assertNull( r.error );
+        assertEquals( 100000, count[0] );
+        assertEquals( 0, r.completions );
+        r.s.request(10);
+        assertEquals( 100000, count[0] );
+    }
+
+    @Test
+    public void testEmptyAndErrors() throws Exception {
+        System.out.println("# testEmptyAndErrors");
+        Recorder r= new Recorder();
+        new IntervalPublisher( "$Y$m$d.dat", "2024-01-01", "2024-01-01", EXTRA ).subscribe( r );
+        assertEquals( 1, r.completions );
+
+        r= new Recorder();
+        new IntervalPublisher( "$Y$m$d.dat", "2024-01-01", "2024-02-01", EXTRA ).subscribe( r );
+        r.s.request(0);
+        assertTrue( r.error instanceof IllegalArgumentException );
+        assertEquals( "request must be positive: 0", r.error.getMessage() );
+        r.s.request(5);
+        assertTrue( r.names.isEmpty() );
+
+        r= new Recorder();
+        new IntervalPublisher( "$Y$m$d.dat", "2024-01-01", "2024-02-01", EXTRA ).subscribe( r );
+        r.s.request(-1);
+        assertEquals( "request must be positive: -1", r.error.getMessage() );
+
+        r= new Recorder();
+        new IntervalPublisher( "$Y$m$d.dat", "2024-02-01", "2024-01-01", EXTRA ).subscribe( r );
+        assertTrue( r.error instanceof IllegalArgumentException );
+    }
+
+    @Test
+    public void testInterval() throws Exception {
+        System.out.println("# testInterval");
+        Recorder r= new Recorder() {
+            @Override
+            public void onNext( IntervalPublisher.Interval interval ) {
+                super.onNext( interval );
+                assertArrayEquals( new int[] { 2024, 1, 2, 0, 0, 0, 0 }, interval.getStopTime() );
+                assertArrayEquals( new int[] { 2024, 1, 1, 0, 0, 0, 0 }, interval.getStartTime() );
+            }
+        };
+        new IntervalPublisher( "$Y$m$d.dat", "2024-01-01T12:00Z", "2024-01-01T13:00Z", EXTRA ).subscribe( r );
+        r.s.request(3);
+        assertEquals( "[20240101.dat]", r.names.toString() );
+        assertEquals( 1, r.completions );
+    }
+}
@@ -0,0 +1,67 @@
+package org.hapiserver;
+
+/**
+ * Measures TimeUtil.normalizeTime for offsets from one second to a hundred 
+ * years.  This is not run as a test.  Run it with:<pre>
+ *   mvn test-compile
+ *   java -cp target/classes:target/test-classes org.hapiserver.NormalizeBenchmark
+ * </pre>
+ * Each offset is added to times through the year 2000, expressed in the 
+ * smallest unit which makes it large, so that all of the carrying is done 
+ * by normalizeTime.  The mean time per call is printed, for the second of 
+ * two runs, since the first measurement can include compilation.
+ * @author jbf
+ */
+public class NormalizeBenchmark {
+
+    private static final String[] NAMES= { "1 second", "1 minute", "1 hour", "1 day", 
+        "1000000 seconds", "1 year (days)", "5000 days", "100 years (days)", "100 years (minutes)" };
+    
+    private static final int[][] OFFSETS= {
+        { 0, 0, 0, 0, 0, 1, 0 },
+        { 0, 0, 0, 0, 0, 60, 0 },
+        { 0, 0, 0, 0, 0, 3600, 0 },
+        { 0, 0, 0, 24, 0, 0, 0 },
+        { 0, 0, 0, 0, 0, 1000000, 0 },
+        { 0, 0, 365, 0, 0, 0, 0 },
+        { 0, 0, 5000, 0, 0, 0, 0 },
+        { 0, 0, 36524, 0, 0, 0, 0 },
+        { 0, 0, 0, 0, 36524*1440, 0, 0 },
+    };
+
+    private static long run( int[] offset, int reps ) {
+        long hash= 0;
+        int[] t= new int[TimeUtil.TIME_DIGITS];
+        for ( int r=0; r<reps; r++ ) {
+            for ( int d=1; d<=366; d++ ) {
+                t[0]= 2000;
+                t[1]= 1;
+                t[2]= d + offset[2];
+                t[3]= d % 24 + offset[3];
+                t[4]= offset[4];
+                t[5]= offset[5];
+                t[6]= offset[6];
+                TimeUtil.normalizeTime( t );
+                hash+= t[0] + t[1] + t[2];
+            }
+        }
+        return hash;
+    }
+
+    public static void main( String[] args ) {
+        int reps= 2000;
+        long calls= 366L * reps;
+        for ( int pass=0; pass<2; pass++ ) {
+            for ( int i=0; i<OFFSETS.length; i++ ) {
+                long hash= run( OFFSETS[i], reps/10 ); // warm up
+                long t0= System.nanoTime();
+                hash+= run( OFFSETS[i], reps );
+                long dt= System.nanoTime() - t0;
+                if ( pass==1 ) {
+                    System.out.println( String.format( "%-22s %10.2f ns/call  (%d)", 
+                        NAMES[i], dt/(double)calls, hash & 0xF ) );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.hapiserver;
+
+import java.nio.CharBuffer;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of PackedNames.
+ * @author jbf
+ */
+public class PackedNamesTest {
+
+    public PackedNamesTest() {
+    }
+
+    @Test
+    public void testAdd() {
+        System.out.println("# testAdd");
+        PackedNames names= new PackedNames( 1, 1 );
+        names.add( "a" );
+        CharSequence first= names.get(0);
+        names.add( "" );
+        names.add( new StringBuilder("bcd") );
+        for ( int i=0; i<1000; i++ ) {
+            names.add( "x"+i );
+        }
+        assertEquals( 1003, names.size() );
+        assertEquals( "a", first.toString() ); // views remain valid after the array grows.
+        assertEquals( "", names.getString(1) );
+        assertEquals( 3, names.length(2) );
+        assertEquals( 'c', names.get(2).charAt(1) );
+        assertEquals( "cd", names.get(2).subSequence(1,3).toString() );
+        assertEquals( "x999", names.get(1002).toString() );
+        char[] cc= new char[6];
+        assertEquals( 4, names.getChars( 1002, cc, 2 ) );
+        assertEquals( "x999", new String( cc, 2, 4 ) );
+        CharBuffer buf= names.getCharBuffer();
+        assertEquals( "abcdx0", buf.subSequence( 0, names.getOffset(4) ).toString() );
+        assertEquals( names.getOffset(1003), buf.length() );
+        try {
+            names.get(1003);
+            fail("expected IndexOutOfBoundsException");
+        } catch ( IndexOutOfBoundsException ex ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFormatRangePacked() throws Exception {
+        System.out.println("# testFormatRangePacked");
+        String[] templates= new String[] { "/data/$Y/$Y$m$d.dat", "$Y$m$d_$(Y;end)$m$d.dat", "$Y $b $d_v$v" };
+        for ( String t: templates ) {
+            String[] expect= URITemplate.formatRange( t, "2023-12-30T06:00Z", "2024-01-03T12:00Z", Collections.emptyMap() );
+            PackedNames names= URITemplate.formatRangePacked( t, "2023-12-30T06:00Z", "2024-01-03T12:00Z", Collections.emptyMap() );
+            assertArrayEquals( t, expect, names.toArray() );
+            int i= 0;
+            for ( CharSequence s: names ) {
+                assertEquals( t, expect[i++], s.toString() );
+            }
+            assertEquals( expect.length, i );
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.hapiserver;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the ParseCache.
+ * @author jbf
+ */
+public class ParseCacheTest {
+
+    public ParseCacheTest() {
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        System.out.println("# testParse");
+        URITemplate ut= new URITemplate("$Y/$Y$m$d_v$v.cdf");
+        ParseCache cache= new ParseCache( ut, 100 );
+        String name= "2024/20240102_v1.3.cdf";
+        for ( int i=0; i<3; i++ ) {
+            Map<String,String> extra= new HashMap<>();
+            int[] tr= cache.parse( name, extra );
+            assertArrayEquals( ut.parse( name, new HashMap<>() ), tr );
+            assertEquals( "1.3", extra.get("v") );
+            tr[0]= 0; // callers may modify the result.
+        }
+        assertEquals( 1, cache.getMisses() );
+        assertEquals( 2, cache.getHits() );
+
+        for ( int i=0; i<2; i++ ) {
+            try {
+                cache.parse( "2024/2024010_v1.3.cdf", new HashMap<>() );
+                fail("expected ParseException");
+            } catch ( ParseException ex ) {
+                // expected
+            }
+        }
+        assertEquals( 2, cache.getMisses() );
+        assertEquals( 3, cache.getHits() );
+        assertEquals( 2, cache.size() );
+    }
+
+    @Test
+    public void testGenerations() throws Exception {
+        System.out.println("# testGenerations");
+        ParseCache cache= new ParseCache( new URITemplate("$Y$m$d.dat"), 100 );
+        cache.newGeneration();
+        cache.parse( "20240101.dat", new HashMap<>() );
+        cache.parse( "20240102.dat", new HashMap<>() );
+        cache.newGeneration();
+        cache.parse( "20240102.dat", new HashMap<>() ); // 20240101.dat was removed
+        cache.parse( "20240103.dat", new HashMap<>() );
+        cache.newGeneration();
+        assertEquals( 2, cache.size() );
+        assertEquals( 1, cache.getEvictions() );
+        cache.newGeneration();
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        System.out.println("# testMaxEntries");
+        ParseCache cache= new ParseCache( new URITemplate("$Y$j.dat"), 10 );
+        for ( int d=1; d<=20; d++ ) {
+            cache.parse( String.format( "2024%03d.dat", d ), new HashMap<>() );
+        }
+        assertEquals( 10, cache.size() );
+        assertEquals( 10, cache.getEvictions() );
+        cache.parse( "2024020.dat", new HashMap<>() );
+        assertEquals( 1, cache.getHits() );
+    }
+}
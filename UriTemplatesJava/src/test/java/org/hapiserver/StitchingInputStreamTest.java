@@ -0,0 +1,165 @@
+
+package org.hapiserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the StitchingInputStream.
+ * @author jbf
+ */
+public class StitchingInputStreamTest {
+
+    public StitchingInputStreamTest() {
+    }
+
+    /**
+     * write daily files with hourly records, skipping the day skipDay.
+     */
+    private static Path makeFiles( int skipDay ) throws IOException {
+        Path dir= Files.createTempDirectory("stitch");
+        for ( int day=1; day<=5; day++ ) {
+            if ( day==skipDay ) continue;
+            StringBuilder b= new StringBuilder();
+            for ( int hour=0; hour<24; hour++ ) {
+                b.append( String.format( "2024-01-%02dT%02d:00:00Z,%d\n", day, hour, day*100+hour ) );
+            }
+            Files.write( dir.resolve( String.format( "data_202401%02d.csv", day ) ), b.toString().getBytes(StandardCharsets.US_ASCII) );
+        }
+        return dir;
+    }
+
+    private static void deleteFiles( Path dir ) throws IOException {
+        for ( File f: dir.toFile().listFiles() ) {
+            Files.delete(f.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    private static String readAll( InputStream in ) throws IOException {
+        ByteArrayOutputStream out= new ByteArrayOutputStream();
+        byte[] buf= new byte[100];
+        int n= in.read(buf);
+        while ( n!=-1 ) {
+            out.write( buf, 0, n );
+            n= in.read(buf);
+        }
+        return new String( out.toByteArray(), StandardCharsets.US_ASCII );
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        System.out.println("# testRead");
+        Path dir= makeFiles(3);
+        try {
+            int[] tr= TimeUtil.parseISO8601TimeRange("2024-01-01T12:00Z/2024-01-04T06:00Z");
+            String template= dir.toString() + "/data_$Y$m$d.csv";
+            String s;
+            try ( StitchingInputStream in= new StitchingInputStream( template, tr ) ) {
+                assertEquals( 4, in.getNames().length );
+                s= readAll(in);
+            }
+            String[] lines= s.split("\n");
+            assertEquals( 12 + 24 + 6, lines.length );
+            assertEquals( "2024-01-01T12:00:00Z,112", lines[0] );
+            assertEquals( "2024-01-02T00:00:00Z,200", lines[12] );
+            assertEquals( "2024-01-04T00:00:00Z,400", lines[36] );
+            assertEquals( "2024-01-04T05:00:00Z,405", lines[lines.length-1] );
+
+            try ( StitchingInputStream in= new StitchingInputStream( template, tr, java.util.Collections.<String,String>emptyMap(), 0 ) ) {
+                assertEquals( s, readAll(in) );
+            }
+
+        } finally {
+            deleteFiles(dir);
+        }
+    }
+
+    @Test
+    public void testReadAligned() throws Exception {
+        System.out.println("# testReadAligned");
+        Path dir= makeFiles(-1);
+        try {
+            int[] tr= TimeUtil.parseISO8601TimeRange("2024-01-02/2024-01-04");
+            String template= dir.toString() + "/data_$Y$m$d.csv";
+            String s;
+            try ( StitchingInputStream in= new StitchingInputStream( template, tr ) ) {
+                s= readAll(in);
+                assertEquals( -1, in.read() );
+            }
+            String[] lines= s.split("\n");
+            assertEquals( 48, lines.length );
+            assertEquals( "2024-01-02T00:00:00Z,200", lines[0] );
+            assertEquals( "2024-01-03T23:00:00Z,323", lines[47] );
+        } finally {
+            deleteFiles(dir);
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        System.out.println("# testPrefetch");
+        Path dir= makeFiles(-1);
+        try {
+            int[] tr= TimeUtil.parseISO8601TimeRange("2024-01-01/2024-01-06");
+            String template= dir.toString() + "/data_$Y$m$d.csv";
+            final List<Runnable> requested= new ArrayList<>();
+            Executor recording= new Executor() {
+                @Override
+                public void execute(Runnable r) {
+                    requested.add(r);
+                    r.run();
+                }
+            };
+            for ( int prefetch: new int[] { 0, 2 } ) {
+                requested.clear();
+                try ( StitchingInputStream in= new StitchingInputStream( template, tr, Collections.<String,String>emptyMap(), prefetch, recording ) ) {
+                    assertEquals( 0, requested.size() );
+                    assertEquals( '2', in.read() );
+                    // the files after the first are requested while the first is read.
+                    assertEquals( 1 + prefetch, requested.size() );
+                    byte[] buf= new byte[ 24*25 - 1 ]; // the rest of the first file
+                    int n= 0;
+                    while ( n<buf.length ) n+= in.read( buf, n, buf.length-n );
+                    assertEquals( 1 + prefetch, requested.size() );
+                    assertEquals( '2', in.read() ); // the second file
+                    assertEquals( Math.min( 5, 2 + prefetch ), requested.size() );
+                }
+            }
+
+            // files which are waiting to be opened when the stream is closed are not opened.
+            final List<Runnable> held= new ArrayList<>();
+            Executor holding= new Executor() {
+                @Override
+                public void execute(Runnable r) {
+                    if ( held.isEmpty() && requested.isEmpty() ) {
+                        requested.add(r);
+                        r.run();
+                    } else {
+                        held.add(r);
+                    }
+                }
+            };
+            requested.clear();
+            StitchingInputStream in= new StitchingInputStream( template, tr, Collections.<String,String>emptyMap(), 2, holding );
+            assertEquals( '2', in.read() );
+            in.close();
+            assertEquals( 2, held.size() );
+            for ( Runnable r: held ) r.run();
+        } finally {
+            deleteFiles(dir);
+        }
+    }
+}
+
@@ -0,0 +1,132 @@
+
+package org.hapiserver;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the TemplateSet.
+ * @author jbf
+ */
+public class TemplateSetTest {
+
+    public TemplateSetTest() {
+    }
+
+    private static List<String> makeTemplates() {
+        List<String> templates= new ArrayList<>();
+        for ( int i=0; i<300; i++ ) {
+            String inst= String.format( "inst%03d", i );
+            templates.add( "/data/"+inst+"/$Y/"+inst+"_$Y$m$d.cdf" );
+            templates.add( "/data/"+inst+"/$Y/"+inst+"_$Y$m$d_v$v.cdf" );
+        }
+        templates.add( "/data/ace/$Y$m$d.dat" );
+        templates.add( "/data/ace/$Y$j.dat" );
+        templates.add( "$Y$m$d.txt" );
+        return templates;
+    }
+
+    @Test
+    public void testMatch() throws Exception {
+        System.out.println("# testMatch");
+        List<String> templates= makeTemplates();
+        TemplateSet ts= new TemplateSet( templates );
+        assertEquals( templates.size(), ts.size() );
+
+        List<TemplateSet.Match> mm= ts.match( "/data/inst123/2024/inst123_20240102.cdf" );
+        assertEquals( 1, mm.size() );
+        assertEquals( "/data/inst123/$Y/inst123_$Y$m$d.cdf", mm.get(0).getTemplate() );
+        assertArrayEquals( new int[] { 2024,1,2,0,0,0,0, 2024,1,3,0,0,0,0 }, mm.get(0).getTimeRange() );
+
+        mm= ts.match( "/data/inst123/2024/inst123_20240102_v1.2.cdf" );
+        assertEquals( 1, mm.size() );
+        assertEquals( "1.2", mm.get(0).getExtra().get("v") );
+
+        mm= ts.match( "/data/ace/2024001.dat" );
+        assertEquals( 1, mm.size() );
+        assertEquals( "/data/ace/$Y$j.dat", mm.get(0).getTemplate() );
+
+        mm= ts.match( "/data/inst123/2024/inst124_20240102.cdf" );
+        assertEquals( 0, mm.size() );
+
+        mm= ts.match( "20240102.txt" );
+        assertEquals( 1, mm.size() );
+
+        mm= ts.match( "" );
+        assertEquals( 0, mm.size() );
+    }
+
+    /**
+     * the result should be the same as trying every template.
+     * @throws Exception
+     */
+    @Test
+    public void testMatchAgreesWithParse() throws Exception {
+        System.out.println("# testMatchAgreesWithParse");
+        List<String> templates= makeTemplates();
+        TemplateSet ts= new TemplateSet( templates );
+        String[] names= new String[] {
+            "/data/inst000/2024/inst000_20240102.cdf",
+            "/data/inst299/2024/inst299_20240102_v01.cdf",
+            "/data/ace/20240102.dat",
+            "/data/ace/2024010.dat",
+            "/data/ace/202401.dat",
+            "/data/inst299/2024/inst299_2024010.cdf",
+            "/data/inst299/2024/inst299_20240102.cdfx" };
+        for ( String n: names ) {
+            List<String> expect= new ArrayList<>();
+            for ( String t: templates ) {
+                try {
+                    new URITemplate(t).parse( n, new HashMap<>() );
+                    expect.add( t );
+                } catch ( ParseException | IllegalArgumentException ex ) {
+                    // does not match
+                }
+            }
+            List<String> actual= new ArrayList<>();
+            for ( TemplateSet.Match m: ts.match(n) ) {
+                actual.add( m.getTemplate() );
+            }
+            assertEquals( n, expect, actual );
+        }
+    }
+
+    @Test
+    public void testCandidates() throws Exception {
+        System.out.println("# testCandidates");
+        TemplateSet ts= new TemplateSet( Arrays.asList( "/data/$Y/instA_$Y$j.cdf", "/data/$Y/instB_$Y$j.cdf",
+            "/data/$Y/instB_$Y$j_v$v.cdf", "/data/$Y/$Y$m$d.dat" ) );
+        // the literals after the first field separate the templates.
+        assertEquals( Arrays.asList(1), ts.candidates( "/data/2024/instB_2024001.cdf" ) );
+        assertEquals( Arrays.asList(2), ts.candidates( "/data/2024/instB_2024001_v3.cdf" ) );
+        assertEquals( Arrays.asList(3), ts.candidates( "/data/2024/20240101.dat" ) );
+        assertEquals( Arrays.asList(), ts.candidates( "/data/2024/instC_2024001.cdf" ) );
+
+        String[] templates= new String[] { "/data/$(Y;pad=none)_$j.dat", "/data/$Y_$j.dat", "$Y $b $d.txt", "$Y $(b;fmt=full) $d.txt",
+            "/data/$Y/$x_$Y$j.dat", "/data/$Y/a_$Y$j.dat", "$y$m$d.txt" };
+        ts= new TemplateSet( Arrays.asList( templates ) );
+        String[] names= new String[] { "/data/2024_001.dat", "/data/24_001.dat", "2024 Jan 02.txt", "2024 January 02.txt",
+            "/data/2024/a_2024001.dat", "/data/2024/bb_2024001.dat", "240102.txt", "2024 Jan 02.dat" };
+        for ( String n: names ) {
+            List<String> expect= new ArrayList<>();
+            for ( String t: templates ) {
+                try {
+                    new URITemplate(t).parse( n, new HashMap<>() );
+                    expect.add( t );
+                } catch ( ParseException | IllegalArgumentException ex ) {
+                    // does not match
+                }
+            }
+            List<String> actual= new ArrayList<>();
+            for ( TemplateSet.Match m: ts.match(n) ) {
+                actual.add( m.getTemplate() );
+            }
+            assertEquals( n, expect, actual );
+        }
+    }
+}
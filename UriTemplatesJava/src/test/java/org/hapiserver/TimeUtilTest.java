@@ -160,6 +160,37 @@ public class TimeUtilTest {
     }
     
     
+    /**
+     * Test of nextRange and previousRange methods which write into an array, of class TimeUtil.
+     */
+    @Test
+    public void testNextPreviousRangeInto() throws ParseException {
+        System.out.println("nextPreviousRangeInto");
+        String[] ranges= { "2022-12-05Z/2022-12-15Z", "2022-01-31T12:00Z/2022-02-01T00:00Z", 
+            "2020-02-01Z/2020-03-01Z", "2021-11-01Z/2022-01-01Z", "2000-01-01T00:00:00Z/2000-01-01T00:00:01Z" };
+        for ( String s: ranges ) {
+            int[] tr = TimeUtil.parseISO8601TimeRange(s);
+            int[] dest = new int[14];
+            TimeUtil.nextRange(tr, dest);
+            assertArrayEquals(TimeUtil.nextRange(tr), dest);
+            TimeUtil.previousRange(tr, dest);
+            assertArrayEquals(TimeUtil.previousRange(tr), dest);
+            int[] step = tr.clone();
+            for ( int i=0; i<5; i++ ) {
+                TimeUtil.nextRange(step, step);
+            }
+            for ( int i=0; i<5; i++ ) {
+                TimeUtil.previousRange(step, step);
+            }
+            if ( s.startsWith("2022-12") || s.startsWith("2000") ) { // uniform widths return to the start.
+                assertArrayEquals(tr, step);
+            }
+        }
+        int[] tr = TimeUtil.parseISO8601TimeRange("2022-12-05Z/2022-12-15Z");
+        TimeUtil.nextRange(tr, tr);
+        assertEquals("2022-12-15/2022-12-25", TimeUtil.formatIso8601TimeRange(tr));
+    }
+
     /**
      * Test of ceil method, of class TimeUtil.
      */
@@ -231,6 +262,44 @@ public class TimeUtilTest {
         TimeUtil.normalizeTime(time);
         assertArrayEquals( expResult, time );            
     }
+
+    /**
+     * Test of normalizeTime with large and negative offsets, compared with java.time.
+     */
+    @Test
+    public void testNormalizeTimeLargeOffsets() {
+        System.out.println("normalizeTimeLargeOffsets");
+        java.util.Random r= new java.util.Random(5);
+        for ( int i=0; i<2000; i++ ) {
+            int[] time= new int[] { 1900 + r.nextInt(200), 1 + r.nextInt(12), 1 + r.nextInt(28), 
+                r.nextInt(24), r.nextInt(60), r.nextInt(60), r.nextInt(1000000000) };
+            java.time.LocalDateTime expect= java.time.LocalDateTime.of( time[0], time[1], time[2], time[3], time[4], time[5], time[6] );
+            int component= 1 + r.nextInt(6);
+            int range= component==1 ? 1200 : ( component==2 ? 50000 : 1000000 );
+            int offset= r.nextInt( 2*range ) - range;
+            time[component]+= offset;
+            switch ( component ) {
+                case 1: expect= expect.plusMonths(offset); break;
+                case 2: expect= expect.plusDays(offset); break;
+                case 3: expect= expect.plusHours(offset); break;
+                case 4: expect= expect.plusMinutes(offset); break;
+                case 5: expect= expect.plusSeconds(offset); break;
+                default: expect= expect.plusNanos(offset); break;
+            }
+            TimeUtil.normalizeTime(time);
+            assertArrayEquals( new int[] { expect.getYear(), expect.getMonthValue(), expect.getDayOfMonth(), 
+                expect.getHour(), expect.getMinute(), expect.getSecond(), expect.getNano() }, time );
+        }
+        int[] time = new int[] { 2000, 1, 1, 0, 0, 1000000, 0 };
+        TimeUtil.normalizeTime(time);
+        assertArrayEquals( new int[] { 2000, 1, 12, 13, 46, 40, 0 }, time );
+        time = new int[] { 2000, 1, 5001, 0, 0, 0, 0 };
+        TimeUtil.normalizeTime(time);
+        assertArrayEquals( new int[] { 2013, 9, 9, 0, 0, 0, 0 }, time );
+        time = new int[] { 2000, 3, 1, 0, 0, 0, -1 };
+        TimeUtil.normalizeTime(time);
+        assertArrayEquals( new int[] { 2000, 2, 29, 23, 59, 59, 999999999 }, time );
+    }
     
     /**
      * Test of isoTimeFromArray method, of class TimeUtil.
@@ -272,6 +341,39 @@ public class TimeUtilTest {
         result=TimeUtil.isoTimeToArray("lastminute+PT1M");
     }
 
+    /**
+     * Test of isoTimeToArray methods which scan chars and bytes into an array, of class TimeUtil.
+     */
+    @Test
+    public void testIsoTimeToArrayInto() throws Exception {
+        System.out.println("isoTimeToArrayInto");
+        String[] times= { "2021", "2020-01", "2022W08", "2022-W08", "2020-032", "2020-01-01", "2020-01-01Z", 
+            "2020-01-01T00Z", "2020-01-01T00:00Z", "2020-034T06:07:08.000010001", "2012-01-17T02:00:00.245", 
+            "2020-001Z", "2020-02-30T24:00Z", "2020-12-31T23:59:60Z" };
+        int[] result= new int[7];
+        for ( String time: times ) {
+            int[] expResult= TimeUtil.isoTimeToArray(time);
+            TimeUtil.isoTimeToArray( java.nio.CharBuffer.wrap( time.toCharArray() ), result );
+            assertArrayEquals( time, expResult, result );
+            byte[] bytes= ( "t=" + time + ",1.0" ).getBytes("US-ASCII");
+            Arrays.fill( result, -1 );
+            TimeUtil.isoTimeToArray( bytes, 2, time.length(), result );
+            assertArrayEquals( time, expResult, result );
+        }
+        // digits beyond nanoseconds are ignored.
+        assertArrayEquals( new int[] { 2020, 1, 1, 1, 2, 3, 123456789 }, 
+            TimeUtil.isoTimeToArray("2020-01-01T01:02:03.123456789123Z") );
+        String[] bad= { "2020-01-0", "abcd", "2020-01-01T12:3x", "20200101T00:00Z", "2020-01-01T00:00:00.12x" };
+        for ( String time: bad ) {
+            try {
+                TimeUtil.isoTimeToArray( time.getBytes("US-ASCII"), 0, time.length(), result );
+                fail( "expected IllegalArgumentException for " + time );
+            } catch ( IllegalArgumentException ex ) {
+                // expected
+            }
+        }
+    }
+
     /**
      * Test of dayOfYear method, of class TimeUtil.
      */
@@ -336,6 +438,34 @@ public class TimeUtilTest {
     public void testMonthForDayOfYear() {
         System.out.println("monthForDayOfYear");
         assertEquals(TimeUtil.monthForDayOfYear(2000,45),2);
+        assertEquals(TimeUtil.monthForDayOfYear(2000,60),2);
+        assertEquals(TimeUtil.monthForDayOfYear(2001,60),3);
+        assertEquals(TimeUtil.monthForDayOfYear(2000,366),12);
+        try {
+            TimeUtil.monthForDayOfYear(2001,366);
+            fail("expected IllegalArgumentException");
+        } catch ( IllegalArgumentException ex ) {
+            // expected
+        }
+    }
+
+    /**
+     * the calendar tables must agree with the calculations they replace.
+     */
+    @Test
+    public void testCalendarTables() {
+        System.out.println("calendarTables");
+        int j0= TimeUtil.julianDay( 1583, 1, 1 ) - 400;
+        int j1= TimeUtil.julianDay( 9002, 1, 1 ) + 400;
+        for ( int j=j0; j<j1; j++ ) {
+            assertArrayEquals( TimeUtil.fromJulianDayFormula(j), TimeUtil.fromJulianDay(j) );
+        }
+        for ( int year=1583; year<=2400; year++ ) {
+            for ( int doy=1; doy<=365; doy++ ) {
+                int[] t= TimeUtil.fromJulianDay( TimeUtil.julianDay( year, 1, doy ) );
+                assertEquals( t[1], TimeUtil.monthForDayOfYear( year, doy ) );
+            }
+        }
     }
 
     /**
@@ -423,6 +553,44 @@ public class TimeUtilTest {
         assertArrayEquals(expResult, result);
     }
 
+    /**
+     * Test of add and subtract methods which write into an array, of class TimeUtil.
+     */
+    @Test
+    public void testAddSubtractInto() {
+        System.out.println("addSubtractInto");
+        int[] base = new int[] { 2020, 7, 8, 23, 0, 0, 0 };
+        int[] offset = new int[] { 0, 0, 0, 2, 0, 0, 0 };
+        int[] dest = new int[7];
+        TimeUtil.add(base, offset, dest);
+        assertArrayEquals(new int[] { 2020, 7, 9, 1, 0, 0, 0 }, dest);
+        TimeUtil.subtract(dest, offset, dest);
+        assertArrayEquals(base, dest);
+        TimeUtil.add(base, offset, base);
+        assertArrayEquals(new int[] { 2020, 7, 9, 1, 0, 0, 0 }, base);
+        TimeUtil.subtract(offset, offset, dest); // offsets are not normalized.
+        assertArrayEquals(new int[7], dest);
+    }
+
+    /**
+     * Test of compare method, of class TimeUtil.
+     */
+    @Test
+    public void testCompare() {
+        System.out.println("compare");
+        int[] t1 = new int[] { 2024, 1, 1, 0, 0, 0, 0 };
+        int[] t2 = new int[] { 2024, 1, 1, 0, 0, 0, 1 };
+        assertTrue(TimeUtil.compare(t1, t2) < 0);
+        assertTrue(TimeUtil.compare(t2, t1) > 0);
+        assertEquals(0, TimeUtil.compare(t1, t1.clone()));
+        int[] t3 = new int[] { 2023, 12, 31, 24, 0, 0, 0 };
+        assertEquals(0, TimeUtil.compare(t3, t1));
+        assertArrayEquals(new int[] { 2023, 12, 31, 24, 0, 0, 0 }, t3); // not modified
+        int[] t4 = new int[] { 2024, 2, 30, 0, 0, 0, 0 };
+        assertTrue(TimeUtil.compare(t4, new int[] { 2024, 3, 1, 0, 0, 0, 0 }) == 0);
+        assertEquals(30, t4[2]);
+    }
+
     /**
      * Test of formatIso8601Duration method, of class TimeUtil.
      */
@@ -1032,4 +1200,78 @@ public class TimeUtilTest {
         
     }
 
+    /**
+     * Test of toPackedTime and fromPackedTime methods, of class TimeUtil.
+     */
+    @Test
+    public void testPackedTime() {
+        System.out.println("packedTime");
+        assertEquals( 0L, TimeUtil.toPackedTime( new int[] { 2000, 1, 1, 0, 0, 0, 0 } ) );
+        assertEquals( TimeUtil.NANOSECONDS_PER_DAY + 1, TimeUtil.toPackedTime( new int[] { 2000, 1, 2, 0, 0, 0, 1 } ) );
+        assertEquals( -1L, TimeUtil.toPackedTime( new int[] { 1999, 12, 31, 23, 59, 59, 999999999 } ) );
+        assertArrayEquals( new int[] { 1999, 12, 31, 23, 59, 59, 999999999 }, TimeUtil.fromPackedTime( -1L ) );
+        // leap second is the next day
+        assertEquals( TimeUtil.toPackedTime( new int[] { 2017, 1, 1, 0, 0, 0, 0 } ), 
+            TimeUtil.toPackedTime( new int[] { 2016, 12, 31, 23, 59, 60, 0 } ) );
+
+        java.util.Random r= new java.util.Random(0);
+        long last= Long.MIN_VALUE;
+        int[] lastTime= null;
+        int[] t= new int[TimeUtil.TIME_DIGITS];
+        for ( int i=0; i<10000; i++ ) {
+            int[] time= new int[] { 1710 + r.nextInt(580), 1 + r.nextInt(12), 1 + r.nextInt(28), r.nextInt(24), 
+                r.nextInt(60), r.nextInt(60), r.nextInt(1000000000) };
+            long p= TimeUtil.toPackedTime( time );
+            TimeUtil.fromPackedTime( p, t );
+            assertArrayEquals( time, t );
+            if ( lastTime!=null ) {
+                assertEquals( TimeUtil.gt( time, lastTime ), p>last );
+            }
+            last= p;
+            lastTime= time;
+        }
+        try {
+            TimeUtil.toPackedTime( new int[] { 2300, 1, 1, 0, 0, 0, 0 } );
+            fail("expected IllegalArgumentException");
+        } catch ( IllegalArgumentException ex ) {
+            // expected
+        }
+        // unnormalized hours are carried into the days, but must not overflow.
+        assertEquals( TimeUtil.toPackedTime( new int[] { 2000, 1, 3, 0, 0, 0, 0 } ), 
+            TimeUtil.toPackedTime( new int[] { 2000, 1, 1, 48, 0, 0, 0 } ) );
+        int[][] overflows= new int[][] { { 2292, 1, 1, 24*120, 0, 0, 0 }, { 2000, 1, 1, Integer.MAX_VALUE, 0, 0, 0 },
+            { 1708, 1, 1, 0, 0, Integer.MIN_VALUE, Integer.MIN_VALUE } };
+        for ( int[] time: overflows ) {
+            try {
+                TimeUtil.toPackedTime( time );
+                fail("expected IllegalArgumentException");
+            } catch ( IllegalArgumentException ex ) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Test of addToPackedTime and packedTimeDifference methods, of class TimeUtil.
+     */
+    @Test
+    public void testPackedTimeArithmetic() {
+        System.out.println("packedTimeArithmetic");
+        long p= TimeUtil.toPackedTime( new int[] { 2024, 1, 31, 12, 0, 0, 0 } );
+        long p1= TimeUtil.addToPackedTime( p, new int[] { 0, 0, 1, 12, 0, 0, 5 } );
+        assertArrayEquals( new int[] { 2024, 2, 2, 0, 0, 0, 5 }, TimeUtil.fromPackedTime( p1 ) );
+        assertEquals( 36*3600*1000000000L + 5, TimeUtil.packedTimeDifference( p1, p ) );
+        long p2= TimeUtil.addToPackedTime( p, new int[] { 0, 1, 0, 0, 0, 0, 0 } );
+        assertArrayEquals( TimeUtil.add( new int[] { 2024, 1, 31, 12, 0, 0, 0 }, new int[] { 0, 1, 0, 0, 0, 0, 0 } ),
+            TimeUtil.fromPackedTime( p2 ) );
+        long p3= TimeUtil.addToPackedTime( p, new int[] { 0, 0, -1, 0, 0, 0, 0 } );
+        assertArrayEquals( new int[] { 2024, 1, 30, 12, 0, 0, 0 }, TimeUtil.fromPackedTime( p3 ) );
+        try {
+            TimeUtil.packedTimeDifference( Long.MAX_VALUE, -1000 );
+            fail("expected ArithmeticException");
+        } catch ( ArithmeticException ex ) {
+            // expected
+        }
+    }
+
 }
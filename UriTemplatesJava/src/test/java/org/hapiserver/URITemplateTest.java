@@ -6,9 +6,11 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -494,5 +496,260 @@ public class URITemplateTest {
         }
         
     }
-}
 
+    @Test
+    public void testGetFixedLength() {
+        System.out.println("# testGetFixedLength");
+        assertEquals( 17, new URITemplate("/tmp/$Y$m$d.dat").getFixedLength() );
+        assertEquals( 19, new URITemplate("/tmp/$Y$j.dat.gz").getFixedLength() );
+        assertEquals( -1, new URITemplate("/tmp/$Y$m$d_$v.dat").getFixedLength() );
+    }
+
+    @Test
+    public void testFormatTo() throws Exception {
+        System.out.println("# testFormatTo");
+        String[] templates= new String[] { "/data/$Y/$Y$m$d.dat", "$Y$j_$(H;pad=space).dat", "$Y $b $d_v$v",
+            "$Y$m$d_$(Y;end)$m$d.dat", "$(d;pad=none)/$Y.dat ", "$Y$m$(d;delta=10;phasestart=1979-01-01)" };
+        int[] start= new int[] { 2024, 1, 2, 3, 0, 0, 0 };
+        int[] stop= new int[] { 2024, 1, 5, 0, 0, 0, 0 };
+        StringBuilder b= new StringBuilder("names:");
+        java.io.StringWriter w= new java.io.StringWriter();
+        for ( String t: templates ) {
+            URITemplate ut= new URITemplate(t);
+            String expect= ut.formatStartStopRange( start.clone(), stop.clone() );
+            b.setLength(6);
+            ut.formatTo( start.clone(), stop.clone(), Collections.<String,String>emptyMap(), b );
+            assertEquals( t, "names:"+expect, b.toString() );
+            w.getBuffer().setLength(0);
+            ut.formatTo( start.clone(), stop.clone(), Collections.<String,String>emptyMap(), w );
+            assertEquals( t, expect, w.toString() );
+        }
+        assertEquals( "2/2024.dat", new URITemplate("$(d;pad=none)/$Y.dat ").formatStartStopRange( start, stop ) );
+    }
+
+    @Test
+    public void testFormatToBytes() throws Exception {
+        System.out.println("# testFormatToBytes");
+        int[] start= new int[] { 2024, 1, 2, 3, 0, 0, 0 };
+        int[] stop= new int[] { 2024, 1, 3, 0, 0, 0, 0 };
+        URITemplate ut= new URITemplate("/data/$Y/$Y$m$d.dat");
+        String expect= ut.formatStartStopRange( start.clone(), stop.clone() );
+        Map<String,String> extra= Collections.emptyMap();
+
+        byte[] bb= new byte[40];
+        int n= ut.formatTo( start.clone(), stop.clone(), extra, bb, 3 );
+        assertEquals( expect.length(), n );
+        assertEquals( expect, new String( bb, 3, n, "US-ASCII" ) );
+        try {
+            ut.formatTo( start.clone(), stop.clone(), extra, bb, 30 );
+            fail("expected IndexOutOfBoundsException");
+        } catch ( IndexOutOfBoundsException ex ) {
+            assertEquals( 0, bb[30] );
+        }
+
+        for ( java.nio.ByteBuffer buf: new java.nio.ByteBuffer[] { java.nio.ByteBuffer.allocate(40), java.nio.ByteBuffer.allocateDirect(40) } ) {
+            buf.put( (byte)'#' );
+            assertEquals( expect.length(), ut.formatTo( start.clone(), stop.clone(), extra, buf ) );
+            assertEquals( 1+expect.length(), buf.position() );
+            buf.flip();
+            byte[] b= new byte[buf.remaining()];
+            buf.get(b);
+            assertEquals( "#"+expect, new String( b, "US-ASCII" ) );
+            buf.clear();
+            buf.position( 30 );
+            try {
+                ut.formatTo( start.clone(), stop.clone(), extra, buf );
+                fail("expected BufferOverflowException");
+            } catch ( java.nio.BufferOverflowException ex ) {
+                assertEquals( 30, buf.position() );
+            }
+        }
+
+        try {
+            new URITemplate("/donn\u00e9es/$Y.dat").formatTo( start, stop, extra, bb, 0 );
+            fail("expected IllegalArgumentException");
+        } catch ( IllegalArgumentException ex ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAppendZeroPadded() {
+        System.out.println("# testAppendZeroPadded");
+        int[] values= new int[] { 0, 1, 9, 10, 99, 100, 101, 999, 1000, 2024, 99999, 123456789, 1999999999,
+            Integer.MAX_VALUE, -1, -10, -123, Integer.MIN_VALUE };
+        StringBuilder b= new StringBuilder();
+        for ( int length=1; length<=9; length++ ) {
+            for ( int v: values ) {
+                b.setLength(0);
+                b.append("x");
+                URITemplate.appendZeroPadded( b, v, length );
+                assertEquals( "x"+String.format( "%0"+length+"d", v ), b.toString() );
+            }
+        }
+    }
+
+    @Test
+    public void testFormatMonthNames() throws Exception {
+        System.out.println("# testFormatMonthNames");
+        int[] start= new int[] { 2024, 9, 2, 0, 0, 0, 0 };
+        int[] stop= new int[] { 2024, 9, 3, 0, 0, 0, 0 };
+        assertEquals( "2024sep02", new URITemplate("$Y$b$d").formatStartStopRange( start, stop ) );
+        assertEquals( "2024SEP02", new URITemplate("$Y$(b;case=uc)$d").formatStartStopRange( start, stop ) );
+        assertEquals( "2024Sep02", new URITemplate("$Y$(b;case=cap)$d").formatStartStopRange( start, stop ) );
+        assertEquals( "2024_september_02", new URITemplate("$Y_$(b;fmt=full)_$d").formatStartStopRange( start, stop ) );
+    }
+
+    @Test
+    public void testFormatQualifiers() throws Exception {
+        System.out.println("# testFormatQualifiers");
+        int[] start= new int[] { 2024, 3, 5, 7, 0, 0, 0 };
+        int[] stop= new int[] { 2024, 3, 6, 0, 0, 0, 0 };
+        assertEquals( "202/2024", new URITemplate("$(Y;div=10)/$Y").formatStartStopRange( start.clone(), stop.clone() ) );
+        assertEquals( "2024_3 _7_", new URITemplate("$Y_$(m;pad=space)_$(H;pad=underscore)").formatStartStopRange( start.clone(), stop.clone() ) );
+        assertEquals( "2024_03_06", new URITemplate("$Y_$(m;delta=2)_$(H;span=6)").formatStartStopRange( start.clone(), stop.clone() ) );
+        assertEquals( "20240305", new URITemplate("$Y$m$(d;delta=10;phasestart=1979-01-01)").formatStartStopRange( start.clone(), stop.clone() ) );
+        assertArrayEquals( new int[] { 2020, 1, 1, 0, 0, 0, 0, 2030, 1, 1, 0, 0, 0, 0 }, new URITemplate("$(Y;div=10)").parse("202") );
+    }
+
+    /**
+     * return the names covering the range found by formatting and then parsing each name, 
+     * as formatRange did before the intervals were stepped.
+     */
+    private static String[] roundTrip( String t, String startTime, String stopTime ) throws ParseException {
+        URITemplate ut= new URITemplate(t);
+        int[] ptr= TimeUtil.isoTimeToArray( startTime );
+        int[] stop= TimeUtil.isoTimeToArray( stopTime );
+        List<String> result= new ArrayList<>();
+        while ( TimeUtil.gt( stop, ptr ) ) {
+            String s= ut.formatStartStopRange( ptr.clone(), ptr.clone() );
+            result.add( s );
+            ptr= TimeUtil.getStopTime( ut.parse( s ) );
+        }
+        return result.toArray( new String[result.size()] );
+    }
+
+    @Test
+    public void testCountAndFormatInterval() throws Exception {
+        System.out.println("# testCountAndFormatInterval");
+        String[] templates= new String[] { "$Y$m$d.dat", "$Y$j_$H.dat", "$Y$m.dat", "$Y", "$(Y;delta=10)", "$Y_$(m;delta=3)",
+            "$Y$m$(d;delta=10;phasestart=1979-01-01)", "$Y$j$H$(M;span=15)", "$Y$m$d$H$M$(S;span=30)", "$Y/$b/$d_v$v.dat" };
+        String[][] ranges= new String[][] { { "2023-11-30T06:00Z", "2024-03-02T12:00Z" }, { "2024-01-01", "2024-01-02" },
+            { "2024-01-01T00:00Z", "2024-01-01T00:00Z" }, { "1999-12-31T23:59:40Z", "2000-01-01T00:01:10Z" } };
+        for ( String t: templates ) {
+            URITemplate ut= new URITemplate(t);
+            assertTrue( t, ut.hasFixedCadence() );
+            for ( String[] r: ranges ) {
+                String[] expect= URITemplate.formatRange( t, r[0], r[1] );
+                int[] tr= TimeUtil.parseISO8601TimeRange( r[0]+"/"+r[1] );
+                assertEquals( t+" "+r[0], expect.length, ut.countIntervals(tr) );
+                for ( int i=0; i<expect.length; i++ ) {
+                    assertEquals( t, expect[i], ut.formatInterval( tr, i ) );
+                }
+            }
+        }
+        URITemplate ut= new URITemplate("$Y$m$d$H$M.dat");
+        int[] tr= TimeUtil.parseISO8601TimeRange( "2000-01-01/2010-01-01" );
+        assertEquals( 5260320, ut.countIntervals(tr) );
+        assertEquals( "200912312359.dat", ut.formatInterval( tr, 5260319 ) );
+        try {
+            ut.formatInterval( tr, 5260320 );
+            fail("expected IllegalArgumentException");
+        } catch ( IllegalArgumentException ex ) {
+            // expected
+        }
+        String[] noCadence= new String[] { "$Y$j$(H;span=5)", "$Y$m$d_$(Y;end)$m$d", "$Y$(j;delta=10)", "$m$d", "$y$m$d",
+            "$Y$m$d_$(hrinterval;names=01,02,03,04)", "$Y$(m;span=6)$d", "$Y$m$d$(H;delta=3)$M" };
+        for ( String t: noCadence ) {
+            ut= new URITemplate(t);
+            assertFalse( t, ut.hasFixedCadence() );
+            assertNotNull( ut.getCadenceProblem() );
+            try {
+                ut.countIntervals(tr);
+                fail("expected IllegalArgumentException for "+t);
+            } catch ( IllegalArgumentException ex ) {
+                // expected
+            }
+        }
+        // a component set by a qualifier does not step, so these are parsed.
+        for ( String t: new String[] { "$(j;Y=2020)", "$(m;Y=2020)$d.dat", "$Y$m$(d;H=12)" } ) {
+            assertEquals( t, t.startsWith("$Y"), new URITemplate(t).hasFixedCadence() );
+            assertArrayEquals( t, roundTrip( t, "1999-12-31", "2000-01-02" ), URITemplate.formatRange( t, "1999-12-31", "2000-01-02" ) );
+        }
+        // fields finer than the interval are kept from the start time.
+        assertArrayEquals( new String[] { "20230730", "20240130" }, 
+                URITemplate.formatRange( "$Y$(m;span=6)$d", "2023-12-30T06:00Z", "2024-03-02T12:00Z" ) );
+        assertArrayEquals( new String[] { "201906151217", "201906151517", "201906151817" }, 
+                URITemplate.formatRange( "$Y$m$d$(H;delta=3)$M", "2019-06-15T13:17:22.5Z", "2019-06-15T20:00Z" ) );
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        System.out.println("# testStream");
+        String[] templates= new String[] { "$Y$m$d$H.dat", "$Y$j$(H;span=5).dat", "$Y$m$d_$(Y;end)$m$d.dat" };
+        for ( String t: templates ) {
+            String[] expect= URITemplate.formatRange( t, "2023-11-30T06:00Z", "2024-03-02T12:00Z" );
+            int[] tr= TimeUtil.parseISO8601TimeRange( "2023-11-30T06:00Z/2024-03-02T12:00Z" );
+            URITemplate ut= new URITemplate(t);
+            Object[] actual= ut.stream( tr ).toArray();
+            assertArrayEquals( t, expect, actual );
+            if ( ut.hasFixedCadence() ) {
+                actual= ut.stream( tr ).parallel().toArray();
+                assertArrayEquals( t, expect, actual );
+                assertEquals( expect.length, ut.stream( tr ).spliterator().getExactSizeIfKnown() );
+            }
+        }
+        URITemplate ut= new URITemplate("$Y$m$d$H$M.dat");
+        int[] tr= TimeUtil.parseISO8601TimeRange( "2000-01-01/2001-01-01" );
+        java.util.Spliterator<String> s= ut.stream( tr ).spliterator();
+        assertTrue( s.hasCharacteristics( java.util.Spliterator.SUBSIZED ) );
+        java.util.Spliterator<String> prefix= s.trySplit();
+        assertEquals( 527040, prefix.estimateSize() + s.estimateSize() );
+        final String[] first= new String[1];
+        s.tryAdvance( n -> first[0]= n );
+        assertEquals( "200007020000.dat", first[0] );
+        assertEquals( 527040, ut.stream( tr ).parallel().filter( n -> n.endsWith("00.dat") ).count() * 60 );
+
+        // the enum is only formatted with the extra parameters, so the intervals cannot be counted.
+        ut= new URITemplate("$Y$m$d-$(enum;values=a,b,c,d;id=sc).dat");
+        Map<String,String> extra= new HashMap<>();
+        extra.put( "sc", "b" );
+        tr= TimeUtil.parseISO8601TimeRange( "2024-01-01/2024-01-04" );
+        assertArrayEquals( new Object[] { "20240101-b.dat", "20240102-b.dat", "20240103-b.dat" }, ut.stream( tr, extra ).toArray() );
+        assertArrayEquals( new Object[] { "20240101-b.dat", "20240102-b.dat", "20240103-b.dat" }, ut.stream( tr, extra ).parallel().toArray() );
+    }
+
+    @Test
+    public void testShard() throws Exception {
+        System.out.println("# testShard");
+        String[] templates= new String[] { "$Y$m$d.dat", "$Y$m$(d;delta=10;phasestart=1979-01-01)", "$Y_$(m;span=6)", "$Y$j$H$M.dat" };
+        for ( String t: templates ) {
+            URITemplate ut= new URITemplate(t);
+            int[] tr= TimeUtil.parseISO8601TimeRange( "2023-11-30T06:00Z/2024-03-02T12:00Z" );
+            String[] expect= URITemplate.formatRange( t, "2023-11-30T06:00Z", "2024-03-02T12:00Z" );
+            for ( int n: new int[] { 1, 3, 40 } ) { // $Y_$(m;span=6) has empty shards
+                java.util.List<String> all= new java.util.ArrayList<>();
+                int min= Integer.MAX_VALUE, max= 0;
+                for ( int i=0; i<n; i++ ) {
+                    int[] sh= ut.shard( tr, i, n );
+                    String[] names= URITemplate.formatRange( t, TimeUtil.isoTimeFromArray( TimeUtil.getStartTime(sh) ), 
+                        TimeUtil.isoTimeFromArray( TimeUtil.getStopTime(sh) ) );
+                    assertEquals( t, ut.countIntervals( sh ), names.length );
+                    all.addAll( Arrays.asList(names) );
+                    min= Math.min( min, names.length );
+                    max= Math.max( max, names.length );
+                }
+                assertArrayEquals( t+" "+n, expect, all.toArray() );
+                assertTrue( max-min<=1 );
+            }
+        }
+        int[] sh= new URITemplate("$Y$m$d.dat").shard( TimeUtil.parseISO8601TimeRange( "2024-01-01T12:00Z/2024-01-11T00:00Z" ), 1, 4 );
+        assertArrayEquals( new int[] { 2024, 1, 4, 0, 0, 0, 0, 2024, 1, 7, 0, 0, 0, 0 }, sh );
+        try {
+            new URITemplate("$Y$m$d.dat").shard( TimeUtil.parseISO8601TimeRange( "2024-01-01/2024-01-11" ), 4, 4 );
+            fail("expected IllegalArgumentException");
+        } catch ( IllegalArgumentException ex ) {
+            // expected
+        }
+    }
+}